@@ -30,16 +30,47 @@ public interface BaseBinaryHeap {
         return oldItem;
     }
 
+    /**
+     * Arranges the items as a heap. Presorted input is detected: an ascending
+     * prefix is already a valid heap and a descending prefix is reversed into
+     * one, so only the items after it need sifting, and fully sorted input
+     * costs a single linear pass.
+     */
     public static <T> void heapify(T[] heap, Comparator<? super T> comparator,
             int limit) {
-        for(int index = limit / 2 - 1; index >= 0; index--) {
-            siftDown(heap, comparator, limit, index);
+        if(limit < 2) {
+            return;
+        }
+
+        int run = 2;
+        if(comparator.compare(heap[0], heap[1]) > 0) {
+            while(run < limit
+                    && comparator.compare(heap[run - 1], heap[run]) >= 0) {
+                run++;
+            }
+            reverse(heap, 0, run);
         }
+
+        heapify(heap, comparator, limit, run);
     }
 
+    /**
+     * Arranges the items as a heap, where the items before {@code start}
+     * already are one. Leading items that don't break the heap property are
+     * skipped before sifting.
+     */
     public static <T> void heapify(T[] heap, Comparator<? super T> comparator,
             int limit, int start) {
 
+        while(start < limit && comparator.compare(heap[(start - 1) / 2],
+                heap[start]) <= 0) {
+            start++;
+        }
+
+        if(start >= limit) {
+            return;
+        }
+
         if(start == limit - 1) {
             siftUp(heap, comparator, limit, start);
             return;
@@ -143,6 +174,14 @@ public interface BaseBinaryHeap {
         }
     }
 
+    public static <T> void reverse(T[] heap, int from, int to) {
+        for(int left = from, right = to - 1; left < right; left++, right--) {
+            T item = heap[left];
+            heap[left] = heap[right];
+            heap[right] = item;
+        }
+    }
+
     public static <T> void reverseHeapify(T[] heap,
             Comparator<? super T> comparator, int limit) {
         for(int index = (limit + 1) / 2; index < limit; index++) {
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.fill;
+import java.util.Comparator;
+
+/**
+ * The {@link BaseBinaryHeap} kernels for heaps keeping the insertion sequence
+ * of each item in a {@code long[]} parallel to the items. The sequences only
+ * break the ties of the comparator, so equal items leave in insertion order.
+ * @author alexv
+ */
+public interface BaseStableBinaryHeap {
+
+    /**
+     * Compares two items, then their sequences.
+     */
+    public static <T> int compare(Comparator<? super T> comparator, T a,
+            long a_sequence, T b, long b_sequence) {
+        int result = comparator.compare(a, b);
+        return result != 0 ? result : Long.compare(a_sequence, b_sequence);
+    }
+
+    public static <T> T replaceTop(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit, T newItem,
+            long newSequence) {
+        T oldItem = heap[0];
+        heap[0] = newItem;
+        sequences[0] = newSequence;
+        if(limit > 1) {
+            siftDown(heap, sequences, comparator, limit, 0);
+        }
+
+        return oldItem;
+    }
+
+    public static <T> void heapify(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit) {
+        for(int index = limit / 2 - 1; index >= 0; index--) {
+            siftDown(heap, sequences, comparator, limit, index);
+        }
+    }
+
+    public static <T> void splitHeap(T[] tail, long[] tail_sequences,
+            Comparator<? super T> comparator, int limit, T[] head,
+            long[] head_sequences, int count) {
+        final int head_top = count - 1;
+        final int tail_limit = limit - count;
+
+        arraycopy(tail, 0, head, 0, count);
+        arraycopy(tail_sequences, 0, head_sequences, 0, count);
+        arraycopy(tail, count, tail, 0, tail_limit);
+        arraycopy(tail_sequences, count, tail_sequences, 0, tail_limit);
+        fill(tail, tail_limit, limit, null);
+
+        reverseHeapify(head, head_sequences, comparator, count);
+        heapify(tail, tail_sequences, comparator, tail_limit);
+
+        while(compare(comparator, tail[0], tail_sequences[0], head[head_top],
+                head_sequences[head_top]) < 0) {
+            T max_head = head[head_top];
+            long max_head_sequence = head_sequences[head_top];
+            head[head_top] = tail[0];
+            head_sequences[head_top] = tail_sequences[0];
+            reverseSiftDown(head, head_sequences, comparator, count, head_top);
+            tail[0] = max_head;
+            tail_sequences[0] = max_head_sequence;
+            siftDown(tail, tail_sequences, comparator, tail_limit, 0);
+        }
+
+        heapify(head, head_sequences, comparator, count);
+    }
+
+    public static <T> void siftUp(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit, int index) {
+        T item = heap[index];
+        long sequence = sequences[index];
+
+        while(index > 0) {
+            int root = (index - 1) / 2;
+            if(compare(comparator, heap[root], sequences[root],
+                    item, sequence) < 0) {
+                break;
+            }
+
+            heap[index] = heap[root];
+            sequences[index] = sequences[root];
+            index = root;
+        }
+
+        heap[index] = item;
+        sequences[index] = sequence;
+    }
+
+    public static <T> void siftDown(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit, int index) {
+        T item = heap[index];
+        long sequence = sequences[index];
+        int left = index * 2 + 1;
+
+        while(left < limit) {
+            int smallest = left;
+            int right = left + 1;
+            if(right < limit && compare(comparator, heap[right],
+                    sequences[right], heap[left], sequences[left]) < 0) {
+                smallest = right;
+            }
+
+            if(compare(comparator, heap[smallest], sequences[smallest],
+                    item, sequence) > 0) {
+                break;
+            }
+
+            heap[index] = heap[smallest];
+            sequences[index] = sequences[smallest];
+            index = smallest;
+            left = index * 2 + 1;
+        }
+
+        heap[index] = item;
+        sequences[index] = sequence;
+    }
+
+    public static <T> void reverseHeapify(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit) {
+        for(int index = (limit + 1) / 2; index < limit; index++) {
+            reverseSiftDown(heap, sequences, comparator, limit, index);
+        }
+    }
+
+    public static <T> void reverseSiftDown(T[] heap, long[] sequences,
+            Comparator<? super T> comparator, int limit, int index) {
+        T item = heap[index];
+        long sequence = sequences[index];
+        int left = index * 2 - limit;
+
+        while(left >= 0) {
+            int greatest = left;
+            int right = left - 1;
+            if(right >= 0 && compare(comparator, heap[right],
+                    sequences[right], heap[left], sequences[left]) > 0) {
+                greatest = right;
+            }
+
+            if(compare(comparator, heap[greatest], sequences[greatest],
+                    item, sequence) < 0) {
+                break;
+            }
+
+            heap[index] = heap[greatest];
+            sequences[index] = sequences[greatest];
+            index = greatest;
+            left = index * 2 - limit;
+        }
+
+        heap[index] = item;
+        sequences[index] = sequence;
+    }
+}
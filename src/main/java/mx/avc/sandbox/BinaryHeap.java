@@ -9,18 +9,25 @@
 package mx.avc.sandbox;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Comparator;
 import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import static mx.avc.sandbox.BaseBinaryHeap.heapify;
 import static mx.avc.sandbox.BaseBinaryHeap.replaceTop;
+import static mx.avc.sandbox.BaseBinaryHeap.siftDown;
 import static mx.avc.sandbox.BaseBinaryHeap.siftUp;
 import static mx.avc.sandbox.BaseBinaryHeap.splitHeap;
 
 /**
  * Implements a min-heap.
+ * <p>
+ * Resizes, bulk operations and slow single item operations are reported as
+ * Flight Recorder events (see {@link HeapEvents}).
  * @author alexv
  */
 public class BinaryHeap<T> implements Heap<T> {
@@ -86,7 +93,9 @@ public class BinaryHeap<T> implements Heap<T> {
         comparator = c;
 
         if(size > 1) {
+            Object event = HeapEvents.beginBulkOperation();
             heapify(heap, comparator, size);
+            HeapEvents.reportBulkOperation(event, "heapify", size, size);
         }
     }
 
@@ -120,16 +129,19 @@ public class BinaryHeap<T> implements Heap<T> {
             return Optional.empty();
         }
 
+        Object event = HeapEvents.beginSlowOperation();
+        T top;
         if(size == 1) {
-            T top = heap[0];
+            top = heap[0];
             heap[0] = null;
             size = 0;
-            return Optional.of(top);
+        } else {
+            T bottom = heap[--size];
+            heap[size] = null;
+            top = replaceTop(heap, comparator, size, bottom);
         }
-
-        T bottom = heap[--size];
-        heap[size] = null;
-        return Optional.of(replaceTop(heap, comparator, size, bottom));
+        HeapEvents.reportSlowOperation(event, "pop", size);
+        return Optional.of(top);
     }
 
     /**
@@ -138,36 +150,43 @@ public class BinaryHeap<T> implements Heap<T> {
      * @return a list of all the top-most items requested.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public BinaryHeap<T> pop(int count) {
         if(count < 0) {
             throw new IllegalArgumentException();
         }
 
-        if(count == 0 || size == 0) {
-            return new BinaryHeap<>(comparator);
-        }
-
-        if(count >= size) {
-            T[] head = heap;
-            int head_size = size;
-            heap = (T[])DEFAULT_HEAP;
-            size = 0;
-            return new BinaryHeap<>(head, head_size, comparator);
-        }
+        Object event = HeapEvents.beginBulkOperation();
+        BinaryHeap<T> head = split(count);
+        HeapEvents.reportBulkOperation(event, "pop", head.size, size);
+        return head;
+    }
 
-        if(count == 1) {
-            T bottom = heap[--size];
-            heap[size] = null;
-            T top = replaceTop(heap, comparator, size, bottom);
-            T[] head = (T[])new Object[] { top };
-            return new BinaryHeap<>(head, 1, comparator);
-        }
+    /**
+     * Retrieve and extract the top most items of the heap matching a
+     * predicate. The predicate is expected to hold for the items up to some
+     * point in the heap order, like a deadline; the matching items then form
+     * a subtree at the root, which is collected visiting only its nodes and
+     * their children. The holes are filled from the bottom, deepest first,
+     * so each item moved sifts down only below its hole.
+     * @param filter the predicate selecting the items to pop
+     * @return a heap with the items popped.
+     */
+    public BinaryHeap<T> popWhile(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        Object event = HeapEvents.beginBulkOperation();
+        BinaryHeap<T> head = extract(filter);
+        HeapEvents.reportBulkOperation(event, "popWhile", head.size, size);
+        return head;
+    }
 
-        T[] head = (T[])new Object[count];
-        splitHeap(heap, comparator, size, head, count);
-        size = size - count;
-        return new BinaryHeap<>(head, count, comparator);
+    /**
+     * Retrieve and extract the top most items of the heap not greater than a
+     * bound, such as the timers due by now.
+     * @param bound the greatest item to pop
+     * @return a heap with the items popped.
+     */
+    public BinaryHeap<T> popUntil(T bound) {
+        return popWhile(item -> comparator.compare(item, bound) <= 0);
     }
 
     /**
@@ -178,8 +197,14 @@ public class BinaryHeap<T> implements Heap<T> {
      */
     @Override
     public Optional<T> update(Supplier<T> value) {
-        return size == 0 ? Optional.empty() :
-                Optional.of(replaceTop(heap, comparator, size, value.get()));
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        Object event = HeapEvents.beginSlowOperation();
+        T top = replaceTop(heap, comparator, size, value.get());
+        HeapEvents.reportSlowOperation(event, "update", size);
+        return Optional.of(top);
     }
 
     /**
@@ -188,10 +213,12 @@ public class BinaryHeap<T> implements Heap<T> {
      */
     @Override
     public void add(T value) {
+        Object event = HeapEvents.beginSlowOperation();
         ensureExtraCapacity(1);
         int index = size++;
         heap[index] = value;
         siftUp(heap, comparator, size, index);
+        HeapEvents.reportSlowOperation(event, "add", size);
     }
 
     /**
@@ -200,6 +227,7 @@ public class BinaryHeap<T> implements Heap<T> {
      */
     @Override
     public void addAll(Collection<? extends T> values) {
+        Object event = HeapEvents.beginBulkOperation();
         @SuppressWarnings("unchecked")
         T[] v = (T[])values.toArray();
         ensureExtraCapacity(v.length);
@@ -207,6 +235,80 @@ public class BinaryHeap<T> implements Heap<T> {
         System.arraycopy(v, 0, heap, size, v.length);
         size = size + v.length;
         heapify(heap, comparator, size, index);
+        HeapEvents.reportBulkOperation(event, "addAll", v.length, size);
+    }
+
+    /**
+     * Removes a single instance of an item from the heap. The hole is filled
+     * with the bottom item, which is then sifted down or up.
+     * @param value the item to remove
+     * @return true if the item was in the heap
+     */
+    public boolean remove(Object value) {
+        Object event = HeapEvents.beginSlowOperation();
+        for(int index = 0; index < size; index++) {
+            if(Objects.equals(value, heap[index])) {
+                removeAt(index);
+                HeapEvents.reportSlowOperation(event, "remove", size);
+                return true;
+            }
+        }
+        HeapEvents.reportSlowOperation(event, "remove", size);
+        return false;
+    }
+
+    /**
+     * Removes all the items matching a predicate. The predicate is tested on
+     * every item before any is moved, so the heap is left untouched if it
+     * throws; then the surviving items are compacted in a single pass, and
+     * only the items after the first removed one are arranged again.
+     * @param filter the predicate selecting the items to remove
+     * @return true if any item was removed
+     */
+    public boolean removeIf(Predicate<? super T> filter) {
+        Objects.requireNonNull(filter);
+        Object event = HeapEvents.beginBulkOperation();
+        int index = 0;
+        while(index < size && !filter.test(heap[index])) {
+            index++;
+        }
+        if(index == size) {
+            return false;
+        }
+
+        int first = index;
+        BitSet removed_items = new BitSet(size);
+        removed_items.set(first);
+        for(index++; index < size; index++) {
+            if(filter.test(heap[index])) {
+                removed_items.set(index);
+            }
+        }
+
+        int kept = first;
+        for(index = first + 1; index < size; index++) {
+            if(!removed_items.get(index)) {
+                heap[kept++] = heap[index];
+            }
+        }
+        Arrays.fill(heap, kept, size, null);
+        int removed = size - kept;
+        size = kept;
+
+        // the items before the first removed one still are a heap
+        heapify(heap, comparator, size, Math.max(first, 1));
+        HeapEvents.reportBulkOperation(event, "removeIf", removed, size);
+        return true;
+    }
+
+    /**
+     * Removes all the items not contained in a collection.
+     * @param values the items to keep
+     * @return true if any item was removed
+     */
+    public boolean retainAll(Collection<?> values) {
+        Objects.requireNonNull(values);
+        return removeIf(item -> !values.contains(item));
     }
 
     /**
@@ -244,9 +346,121 @@ public class BinaryHeap<T> implements Heap<T> {
      */
     public void trimToSize() {
         if(size < heap.length) {
+            Object event = HeapEvents.beginResize();
             T[] oldheap = heap;
             heap = Arrays.copyOf(heap, size);
             Arrays.fill(oldheap, 0, size, null);
+            HeapEvents.reportResize(event, oldheap.length, size, size);
+        }
+    }
+
+    /**
+     * Raw access to the backing array; only the first {@link #size()} items
+     * are meaningful.
+     */
+    T[] array() {
+        return heap;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BinaryHeap<T> split(int count) {
+        if(count == 0 || size == 0) {
+            return new BinaryHeap<>(comparator);
+        }
+
+        if(count >= size) {
+            T[] head = heap;
+            int head_size = size;
+            heap = (T[])DEFAULT_HEAP;
+            size = 0;
+            return new BinaryHeap<>(head, head_size, comparator);
+        }
+
+        if(count == 1) {
+            T bottom = heap[--size];
+            heap[size] = null;
+            T top = replaceTop(heap, comparator, size, bottom);
+            T[] head = (T[])new Object[] { top };
+            return new BinaryHeap<>(head, 1, comparator);
+        }
+
+        T[] head = (T[])new Object[count];
+        splitHeap(heap, comparator, size, head, count);
+        size = size - count;
+        return new BinaryHeap<>(head, count, comparator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private BinaryHeap<T> extract(Predicate<? super T> filter) {
+        if(size == 0 || !filter.test(heap[0])) {
+            return new BinaryHeap<>(comparator);
+        }
+
+        // the matching subtree in level order, which is index order
+        int[] holes = new int[INITIAL_CAPACITY];
+        int count = 1;
+        for(int i = 0; i < count; i++) {
+            int left = holes[i] * 2 + 1;
+            for(int child = left; child <= left + 1 && child < size; child++) {
+                if(filter.test(heap[child])) {
+                    if(count == holes.length) {
+                        holes = Arrays.copyOf(holes, count * 2);
+                    }
+                    holes[count++] = child;
+                }
+            }
+        }
+
+        T[] head = (T[])new Object[count];
+        for(int i = 0; i < count; i++) {
+            head[i] = heap[holes[i]];
+            heap[holes[i]] = null;
+        }
+        heapify(head, comparator, count);
+
+        if(count > size - count) {
+            // most items popped: compacting and heapifying is cheaper; the
+            // holes are sorted, and items may be null, so they are skipped
+            // by position
+            int kept = 0;
+            int next = 0;
+            for(int index = 0; index < size; index++) {
+                if(next < count && holes[next] == index) {
+                    next++;
+                } else {
+                    heap[kept++] = heap[index];
+                }
+            }
+            Arrays.fill(heap, kept, size, null);
+            size = kept;
+            heapify(heap, comparator, size);
+        } else {
+            // the holes below are filled before the ones above, so the
+            // subtree under each hole is a heap when it is filled
+            for(int i = count - 1; i >= 0; i--) {
+                int hole = holes[i];
+                T bottom = heap[--size];
+                heap[size] = null;
+                if(hole < size) {
+                    heap[hole] = bottom;
+                    siftDown(heap, comparator, size, hole);
+                }
+            }
+        }
+        return new BinaryHeap<>(head, count, comparator);
+    }
+
+    private void removeAt(int index) {
+        T bottom = heap[--size];
+        heap[size] = null;
+        if(index == size) {
+            return;
+        }
+
+        heap[index] = bottom;
+        siftDown(heap, comparator, size, index);
+        if(heap[index] == bottom) {
+            siftUp(heap, comparator, size, index);
         }
     }
 
@@ -255,9 +469,11 @@ public class BinaryHeap<T> implements Heap<T> {
         if(newCapacity > heap.length) {
             newCapacity = Math.min(MAX_CAPACITY, Math.max(INITIAL_CAPACITY,
                             computeNewCapacity(newCapacity)));
+            Object event = HeapEvents.beginResize();
             T[] oldheap = heap;
             heap = Arrays.copyOf(heap, newCapacity);
             Arrays.fill(oldheap, 0, size, null);
+            HeapEvents.reportResize(event, oldheap.length, newCapacity, size);
         }
     }
 
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.nio.LongBuffer;
+import java.util.OptionalLong;
+
+/**
+ * Implements a binary min-heap of primitive long keys in a page blocked
+ * (B-heap) layout.
+ * <p>
+ * The storage is split in pages of {@code 2^k} slots, and every page holds a
+ * complete subtree of {@code 2^k - 1} nodes in its slots {@code 1} onwards.
+ * The children of the leaves of a page are the roots of {@code 2^k} child
+ * pages, so a sift walks {@code k} levels before touching another page: with
+ * the default 4 KiB pages a sift over {@code n} items touches about
+ * {@code log_512(n)} pages instead of {@code log_2(n)}. Pages of 8 slots lay
+ * out the tree in cache lines instead.
+ * <p>
+ * The storage may be any {@link LongBuffer}, such as a view of a memory
+ * mapped file; heaps over a given buffer have a fixed capacity.
+ * @author alexv
+ */
+public class BlockedLongHeap {
+
+    /**
+     * The default page size, in slots; 4 KiB.
+     */
+    public static final int DEFAULT_PAGE_SLOTS = 512;
+
+    private static final int INITIAL_PAGES = 1;
+
+    /**
+     * The heap storage.
+     */
+    private LongBuffer storage;
+
+    /**
+     * Whether the storage may be replaced by a larger one.
+     */
+    private final boolean growable;
+
+    /**
+     * The base 2 logarithm of the page slots.
+     */
+    private final int shift;
+
+    /**
+     * The slot of the first leaf within a page.
+     */
+    private final int leaves;
+
+    /**
+     * The amount of nodes in a page.
+     */
+    private final int nodes;
+
+    /**
+     * The amount of items in the heap.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty heap with growable on-heap storage.
+     * @param pageSlots the page size in slots; a power of two, at least 4
+     */
+    public BlockedLongHeap(int pageSlots) {
+        this(LongBuffer.allocate(checkPageSlots(pageSlots) * INITIAL_PAGES),
+                pageSlots, true);
+    }
+
+    /**
+     * Constructs an empty heap with growable on-heap 4 KiB pages.
+     */
+    public BlockedLongHeap() {
+        this(DEFAULT_PAGE_SLOTS);
+    }
+
+    /**
+     * Constructs an empty heap over the given storage; the heap can hold
+     * {@code pageSlots - 1} items for every full page of the buffer.
+     * @param storage the buffer holding the heap
+     * @param pageSlots the page size in slots; a power of two, at least 4
+     */
+    public BlockedLongHeap(LongBuffer storage, int pageSlots) {
+        this(storage, checkPageSlots(pageSlots), false);
+    }
+
+    private BlockedLongHeap(LongBuffer storage, int pageSlots,
+            boolean growable) {
+        this.storage = storage;
+        this.growable = growable;
+        this.shift = Integer.numberOfTrailingZeros(pageSlots);
+        this.leaves = pageSlots >> 1;
+        this.nodes = pageSlots - 1;
+        this.size = 0;
+    }
+
+    /**
+     * Retrieve the top most item of the heap without removing it.
+     * @return the top-most item in the heap;
+     *          {@link java.util.OptionalLong#empty()} if the heap is empty
+     */
+    public OptionalLong peek() {
+        return size == 0 ? OptionalLong.empty() :
+                OptionalLong.of(storage.get(1));
+    }
+
+    /**
+     * Retrieve and extract the top most item of the heap.
+     * @return the top-most item in the heap;
+     *          {@link java.util.OptionalLong#empty()} if the heap is empty
+     */
+    public OptionalLong pop() {
+        if(size == 0) {
+            return OptionalLong.empty();
+        }
+
+        long top = storage.get(1);
+        long bottom = storage.get(position(--size));
+        if(size > 0) {
+            siftDown(1, bottom);
+        }
+        return OptionalLong.of(top);
+    }
+
+    /**
+     * Updates the top-most element's value.
+     * @param value the new value of the top most item
+     * @return the old value of the top most item is the heap wasn't empty
+     */
+    public OptionalLong update(long value) {
+        if(size == 0) {
+            return OptionalLong.empty();
+        }
+
+        long top = storage.get(1);
+        siftDown(1, value);
+        return OptionalLong.of(top);
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param value the item to add
+     * @throws IllegalStateException if the storage is full and can't grow
+     */
+    public void add(long value) {
+        int index = position(size);
+        if(index >= storage.capacity()) {
+            grow(index);
+        }
+        size++;
+
+        while(index != 1) {
+            int parent = parent(index);
+            long parent_item = storage.get(parent);
+            if(parent_item <= value) {
+                break;
+            }
+            storage.put(index, parent_item);
+            index = parent;
+        }
+        storage.put(index, value);
+    }
+
+    /**
+     * Adds items to the heap.
+     * @param values the items to add
+     */
+    public void addAll(long... values) {
+        for(long value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Indicates if the heap is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the heap
+     * @return the items count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the amount of items the current storage can hold.
+     * @return the storage capacity, in items
+     */
+    public int capacity() {
+        return (storage.capacity() >> shift) * nodes;
+    }
+
+    /**
+     * Removes all the items from the heap
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Maps the breadth-first page order of the items to storage slots.
+     */
+    private int position(int item) {
+        return (item / nodes << shift) + item % nodes + 1;
+    }
+
+    private int parent(int index) {
+        int offset = index & ((1 << shift) - 1);
+        if(offset > 1) {
+            return (index & -(1 << shift)) + (offset >> 1);
+        }
+
+        int page = (index >>> shift) - 1;
+        return ((page >>> shift) << shift) + leaves
+                + ((page & ((1 << shift) - 1)) >> 1);
+    }
+
+    private void siftDown(int index, long item) {
+        int page_mask = (1 << shift) - 1;
+
+        while(true) {
+            int offset = index & page_mask;
+            int left;
+            int right;
+            long left_page;
+            if(offset < leaves) {
+                left = index + offset;
+                right = left + 1;
+                left_page = index >>> shift;
+            } else {
+                left_page = ((long)(index >>> shift) << shift) + 1
+                        + ((offset - leaves) << 1);
+                if(left_page * nodes >= size) {
+                    break;
+                }
+                left = (int)(left_page << shift) + 1;
+                right = left + (1 << shift);
+            }
+
+            if(left_page * nodes + (left & page_mask) - 1 >= size) {
+                break;
+            }
+
+            int smallest = left;
+            long smallest_item = storage.get(left);
+            if(((right >>> shift) * (long)nodes + (right & page_mask) - 1)
+                    < size) {
+                long right_item = storage.get(right);
+                if(right_item < smallest_item) {
+                    smallest = right;
+                    smallest_item = right_item;
+                }
+            }
+
+            if(smallest_item >= item) {
+                break;
+            }
+
+            storage.put(index, smallest_item);
+            index = smallest;
+        }
+
+        storage.put(index, item);
+    }
+
+    private void grow(int index) {
+        if(!growable) {
+            throw new IllegalStateException("heap full");
+        }
+
+        int capacity = Math.max(storage.capacity() << 1,
+                (index >>> shift) + 1 << shift);
+        LongBuffer larger = LongBuffer.allocate(capacity);
+        storage.rewind();
+        larger.put(storage);
+        storage = larger;
+    }
+
+    private static int checkPageSlots(int pageSlots) {
+        if(pageSlots < 4 || Integer.bitCount(pageSlots) != 1) {
+            throw new IllegalArgumentException("pageSlots: " + pageSlots);
+        }
+        return pageSlots;
+    }
+}
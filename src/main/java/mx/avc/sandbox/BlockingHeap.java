@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Implements a thread-safe min-heap with blocking retrieval.
+ * <p>
+ * All the operations are guarded by a single {@link ReentrantLock}, so
+ * waiting threads park instead of holding a monitor and virtual threads
+ * never pin their carrier. {@link #drainTo(Collection, int)} extracts a whole
+ * batch with one {@link BinaryHeap#pop(int)} under a single lock hold.
+ * @author alexv
+ */
+public class BlockingHeap<T> implements Heap<T> {
+
+    private final BinaryHeap<T> heap;
+
+    /**
+     * The maximum amount of items in the heap.
+     */
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Constructs an empty, bounded heap.
+     * @param c the comparator used to sort the heap items.
+     * @param capacity the maximum amount of items in the heap
+     */
+    public BlockingHeap(Comparator<T> c, int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.heap = new BinaryHeap<>(c);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Constructs an empty, unbounded heap.
+     * @param c the comparator used to sort the heap items.
+     */
+    public BlockingHeap(Comparator<T> c) {
+        this(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs an empty, unbounded heap.
+     */
+    @SuppressWarnings("unchecked")
+    public BlockingHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    @Override
+    public Optional<T> peek() {
+        lock.lock();
+        try {
+            return heap.peek();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<T> pop() {
+        lock.lock();
+        try {
+            Optional<T> top = heap.pop();
+            if(top.isPresent()) {
+                notFull.signal();
+            }
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BinaryHeap<T> pop(int count) {
+        lock.lock();
+        try {
+            BinaryHeap<T> top = heap.pop(count);
+            signalRemoved(top.size());
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and extracts the top most item, waiting for one if the heap
+     * is empty.
+     * @return the top-most item in the heap
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while(heap.isEmpty()) {
+                notEmpty.await();
+            }
+            notFull.signal();
+            return heap.pop().get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and extracts the top most item, waiting up to the given time
+     * for one if the heap is empty.
+     * @param timeout how long to wait
+     * @param unit the time unit of the timeout
+     * @return the top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Optional<T> poll(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while(heap.isEmpty()) {
+                if(nanos <= 0) {
+                    return Optional.empty();
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            notFull.signal();
+            return heap.pop();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the top most items into a collection, in priority order. The
+     * items are extracted with a single lock acquisition.
+     * @param target the collection receiving the items
+     * @param max the maximum amount of items to move
+     * @return the amount of items moved
+     */
+    public int drainTo(Collection<? super T> target, int max) {
+        Objects.requireNonNull(target);
+        if(max <= 0) {
+            return 0;
+        }
+
+        BinaryHeap<T> batch = pop(max);
+        int count = batch.size();
+        for(int index = 0; index < count; index++) {
+            target.add(batch.pop().get());
+        }
+        return count;
+    }
+
+    /**
+     * Moves all the items into a collection, in priority order.
+     * @param target the collection receiving the items
+     * @return the amount of items moved
+     */
+    public int drainTo(Collection<? super T> target) {
+        return drainTo(target, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        lock.lock();
+        try {
+            return heap.update(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param value the item to add
+     * @throws IllegalStateException if the heap is full
+     */
+    @Override
+    public void add(T value) {
+        if(!offer(value)) {
+            throw new IllegalStateException("heap full");
+        }
+    }
+
+    /**
+     * Adds an item to the heap if there is room for it.
+     * @param value the item to add
+     * @return true if the item was added
+     */
+    public boolean offer(T value) {
+        lock.lock();
+        try {
+            if(heap.size() >= capacity) {
+                return false;
+            }
+            insert(value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the heap, waiting up to the given time for room.
+     * @param value the item to add
+     * @param timeout how long to wait
+     * @param unit the time unit of the timeout
+     * @return true if the item was added
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean offer(T value, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while(heap.size() >= capacity) {
+                if(nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            insert(value);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the heap, waiting for room if necessary.
+     * @param value the item to add
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void put(T value) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while(heap.size() >= capacity) {
+                notFull.await();
+            }
+            insert(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param values the items to add
+     * @throws IllegalStateException if there is no room for all the items
+     */
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        Objects.requireNonNull(values);
+        lock.lock();
+        try {
+            if(values.size() > capacity - heap.size()) {
+                throw new IllegalStateException("heap full");
+            }
+            heap.addAll(values);
+            if(values.size() == 1) {
+                notEmpty.signal();
+            } else if(values.size() > 1) {
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the amount of items that can be added without blocking.
+     * @return the remaining capacity
+     */
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            int count = heap.size();
+            heap.clear();
+            signalRemoved(count);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insert(T value) {
+        heap.add(value);
+        notEmpty.signal();
+    }
+
+    private void signalRemoved(int count) {
+        if(count == 1) {
+            notFull.signal();
+        } else if(count > 1) {
+            notFull.signalAll();
+        }
+    }
+}
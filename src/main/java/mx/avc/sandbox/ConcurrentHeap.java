@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Implements a thread-safe min-heap optimized for readers.
+ * <p>
+ * Mutations are serialized by the write mode of a {@link StampedLock}, and
+ * each one publishes the resulting top and size, even if it fails halfway
+ * through because the comparator or a supplier threw. {@link #peek()},
+ * {@link #size()} and {@link #isEmpty()} read those published values under
+ * an optimistic stamp, so they neither block nor contend with each other, and
+ * only fall back to a read lock if a writer interfered.
+ * @author alexv
+ */
+public class ConcurrentHeap<T> implements Heap<T> {
+
+    private final BinaryHeap<T> heap;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * The published top-most item; only meaningful if size is not zero.
+     */
+    private T top;
+
+    /**
+     * The published amount of items.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     */
+    public ConcurrentHeap(Comparator<T> c) {
+        heap = new BinaryHeap<>(c);
+    }
+
+    /**
+     * Constructs an empty heap.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    @Override
+    public Optional<T> peek() {
+        long stamp = lock.tryOptimisticRead();
+        T t = top;
+        int s = size;
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                t = top;
+                s = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return s == 0 ? Optional.empty() : Optional.of(t);
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int s = size;
+        if(!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                s = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Optional<T> pop() {
+        long stamp = lock.writeLock();
+        try {
+            return heap.pop();
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public BinaryHeap<T> pop(int count) {
+        long stamp = lock.writeLock();
+        try {
+            return heap.pop(count);
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        long stamp = lock.writeLock();
+        try {
+            return heap.update(value);
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void add(T value) {
+        long stamp = lock.writeLock();
+        try {
+            heap.add(value);
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        Objects.requireNonNull(values);
+        long stamp = lock.writeLock();
+        try {
+            heap.addAll(values);
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            heap.clear();
+        } finally {
+            publish();
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Publishes the top and size; the caller must hold the write lock. It
+     * can't throw, so it runs in the {@code finally} block of each write.
+     */
+    private void publish() {
+        size = heap.size();
+        top = size == 0 ? null : heap.array()[0];
+    }
+}
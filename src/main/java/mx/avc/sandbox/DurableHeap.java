@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Implements a min-heap that survives process crashes.
+ * <p>
+ * The items are kept in a {@link BinaryHeap}; every mutation is first
+ * appended to a memory-mapped write-ahead journal. The journal is forced to
+ * disk once every {@code syncInterval} mutations (group commit) or when
+ * {@link #sync()} is called, and it is compacted into a heap-ordered
+ * {@link HeapSnapshot} checkpoint whenever it fills up.
+ * <p>
+ * Like {@link BinaryHeap}, this class is not thread-safe.
+ * @author alexv
+ */
+public class DurableHeap<T> implements Heap<T>, Closeable {
+
+    private static final int DEFAULT_JOURNAL_CAPACITY = 64 << 20;
+
+    private static final int DEFAULT_SYNC_INTERVAL = 1024;
+
+    private static final int JOURNAL_MAGIC = 0x4a524e4c;
+
+    private static final int RECORD_HEADER = Integer.BYTES + 1;
+
+    private static final Pattern CHECKPOINT = Pattern.compile(
+            "checkpoint-(\\d+)\\.heap");
+
+    private static final Pattern JOURNAL = Pattern.compile(
+            "journal-(\\d+)\\.log");
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_ADD_ALL = 2;
+    private static final byte OP_POP = 3;
+    private static final byte OP_POP_COUNT = 4;
+    private static final byte OP_UPDATE = 5;
+    private static final byte OP_CLEAR = 6;
+
+    private final Path directory;
+
+    private final ElementCodec<T> codec;
+
+    private final Comparator<T> comparator;
+
+    private final int journalCapacity;
+
+    private final int syncInterval;
+
+    private BinaryHeap<T> heap;
+
+    private long generation;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer journal;
+
+    /**
+     * The start of the journal record being written.
+     */
+    private int record;
+
+    /**
+     * Mutations appended since the journal was last forced to disk.
+     */
+    private int pending;
+
+    /**
+     * Opens a durable heap with the default journal settings.
+     * @param directory the directory holding the heap files
+     * @param codec the codec used to store the items
+     * @param c the comparator used to sort the heap items
+     * @throws IOException if the heap files cannot be read or created
+     */
+    public DurableHeap(Path directory, ElementCodec<T> codec, Comparator<T> c)
+            throws IOException {
+        this(directory, codec, c, DEFAULT_JOURNAL_CAPACITY,
+                DEFAULT_SYNC_INTERVAL);
+    }
+
+    /**
+     * Opens a durable heap, recovering its contents from a previous run.
+     * @param directory the directory holding the heap files
+     * @param codec the codec used to store the items
+     * @param c the comparator used to sort the heap items
+     * @param journalCapacity the journal size in bytes; a full journal is
+     * compacted into a checkpoint
+     * @param syncInterval the amount of mutations batched per disk sync
+     * @throws IOException if the heap files cannot be read or created
+     */
+    public DurableHeap(Path directory, ElementCodec<T> codec, Comparator<T> c,
+            int journalCapacity, int syncInterval) throws IOException {
+        if(journalCapacity <= Integer.BYTES + RECORD_HEADER
+                || syncInterval <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.directory = directory;
+        this.codec = codec;
+        this.comparator = c;
+        this.journalCapacity = journalCapacity;
+        this.syncInterval = syncInterval;
+
+        Files.createDirectories(directory);
+        recover();
+    }
+
+    @Override
+    public Optional<T> peek() {
+        return heap.peek();
+    }
+
+    @Override
+    public Optional<T> pop() {
+        if(heap.isEmpty()) {
+            return Optional.empty();
+        }
+
+        if(reserve(OP_POP, 0)) {
+            commit();
+        }
+        return heap.pop();
+    }
+
+    @Override
+    public BinaryHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if(count == 0 || heap.isEmpty()) {
+            return heap.pop(count);
+        }
+
+        if(reserve(OP_POP_COUNT, Integer.BYTES)) {
+            journal.putInt(count);
+            commit();
+        }
+        return heap.pop(count);
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        if(heap.isEmpty()) {
+            return Optional.empty();
+        }
+
+        T item = value.get();
+        if(!reserve(OP_UPDATE, codec.size(item))) {
+            Optional<T> result = heap.update(() -> item);
+            checkpoint();
+            return result;
+        }
+
+        try {
+            codec.encode(item, journal);
+        } catch(RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        return heap.update(() -> item);
+    }
+
+    @Override
+    public void add(T value) {
+        if(!reserve(OP_ADD, codec.size(value))) {
+            heap.add(value);
+            checkpoint();
+            return;
+        }
+
+        try {
+            codec.encode(value, journal);
+        } catch(RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        heap.add(value);
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        List<T> items = new ArrayList<>(values);
+        if(items.isEmpty()) {
+            return;
+        }
+
+        long length = Integer.BYTES;
+        for(T item : items) {
+            length += codec.size(item);
+        }
+
+        if(length > journalCapacity
+                || !reserve(OP_ADD_ALL, (int)length)) {
+            heap.addAll(items);
+            checkpoint();
+            return;
+        }
+
+        try {
+            journal.putInt(items.size());
+            items.forEach(item -> codec.encode(item, journal));
+        } catch(RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        heap.addAll(items);
+    }
+
+    @Override
+    public int size() {
+        return heap.size();
+    }
+
+    @Override
+    public void clear() {
+        if(heap.isEmpty()) {
+            return;
+        }
+
+        if(reserve(OP_CLEAR, 0)) {
+            commit();
+        }
+        heap.clear();
+    }
+
+    /**
+     * Forces all the journaled mutations to disk.
+     */
+    public void sync() {
+        if(pending > 0) {
+            journal.force();
+            pending = 0;
+        }
+    }
+
+    /**
+     * Compacts the journal into a new checkpoint holding the current heap.
+     */
+    public void checkpoint() {
+        long next = generation + 1;
+        Path temporary = directory.resolve("checkpoint-" + next + ".tmp");
+
+        try {
+            HeapSnapshot.write(heap, codec, temporary);
+            Files.move(temporary, checkpointPath(next), ATOMIC_MOVE);
+            channel.close();
+            openJournal(next, false);
+            Files.deleteIfExists(journalPath(generation));
+            Files.deleteIfExists(checkpointPath(generation));
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        generation = next;
+    }
+
+    /**
+     * Syncs the journal and releases the heap files.
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try(Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        }
+
+        generation = 0;
+        for(Path file : files) {
+            Matcher matcher = CHECKPOINT.matcher(file.getFileName().toString());
+            if(matcher.matches()) {
+                generation = Math.max(generation,
+                        Long.parseLong(matcher.group(1)));
+            }
+        }
+
+        for(Path file : files) {
+            String name = file.getFileName().toString();
+            Matcher checkpoint = CHECKPOINT.matcher(name);
+            Matcher journal = JOURNAL.matcher(name);
+            if(name.endsWith(".tmp")
+                    || (checkpoint.matches()
+                    && Long.parseLong(checkpoint.group(1)) < generation)
+                    || (journal.matches()
+                    && Long.parseLong(journal.group(1)) < generation)) {
+                Files.delete(file);
+            }
+        }
+
+        Path checkpoint = checkpointPath(generation);
+        heap = Files.exists(checkpoint)
+                ? HeapSnapshot.read(checkpoint, codec, comparator)
+                : new BinaryHeap<>(comparator);
+
+        openJournal(generation, true);
+    }
+
+    private void openJournal(long journalGeneration, boolean replay)
+            throws IOException {
+        Path path = journalPath(journalGeneration);
+        channel = replay
+                ? FileChannel.open(path, CREATE, READ, WRITE)
+                : FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ,
+                        WRITE);
+        journal = channel.map(READ_WRITE, 0, journalCapacity);
+        pending = 0;
+
+        if(journal.getInt(0) != JOURNAL_MAGIC) {
+            journal.putInt(0, JOURNAL_MAGIC);
+            journal.putInt(Integer.BYTES, 0);
+            journal.position(Integer.BYTES);
+            journal.force();
+            return;
+        }
+
+        journal.position(Integer.BYTES);
+        while(journal.remaining() >= RECORD_HEADER) {
+            int start = journal.position();
+            int length = journal.getInt();
+            if(length <= 0 || length > journal.remaining()) {
+                journal.position(start);
+                break;
+            }
+
+            byte op = journal.get();
+            int end = journal.position() + length - 1;
+            try {
+                replay(op);
+            } catch(BufferUnderflowException | IOException e) {
+                journal.position(start);
+                break;
+            }
+            journal.position(end);
+        }
+    }
+
+    private void replay(byte op) throws IOException {
+        switch(op) {
+            case OP_ADD:
+                heap.add(codec.decode(journal));
+                break;
+            case OP_ADD_ALL:
+                int count = journal.getInt();
+                if(count < 0 || count > journal.remaining()) {
+                    throw new IOException("invalid record count: " + count);
+                }
+                List<T> items = new ArrayList<>(count);
+                for(int index = 0; index < count; index++) {
+                    items.add(codec.decode(journal));
+                }
+                heap.addAll(items);
+                break;
+            case OP_POP:
+                heap.pop();
+                break;
+            case OP_POP_COUNT:
+                heap.pop(journal.getInt());
+                break;
+            case OP_UPDATE:
+                T item = codec.decode(journal);
+                heap.update(() -> item);
+                break;
+            case OP_CLEAR:
+                heap.clear();
+                break;
+            default:
+                throw new IllegalStateException("corrupted journal: " + op);
+        }
+    }
+
+    /**
+     * Starts a journal record, compacting the journal first if it's full.
+     * The record length slot is left empty until {@link #commit()}.
+     * @return false if the record can't fit even in an empty journal
+     */
+    private boolean reserve(byte op, int length) {
+        if(length > journalCapacity - Integer.BYTES - 2 * RECORD_HEADER) {
+            return false;
+        }
+
+        if(journal.remaining() < 2 * RECORD_HEADER + length) {
+            checkpoint();
+        }
+
+        record = journal.position();
+        journal.position(record + Integer.BYTES);
+        journal.put(op);
+        return true;
+    }
+
+    /**
+     * Abandons the current record after its payload failed to encode. Its
+     * length slot still holds the terminator, so recovery stops there until
+     * the next record overwrites it, partial payload included.
+     */
+    private void rollback() {
+        journal.position(record);
+    }
+
+    /**
+     * Completes the current record; it becomes visible to recovery once its
+     * length is written, after the terminator of the next record slot.
+     */
+    private void commit() {
+        int end = journal.position();
+        journal.putInt(end, 0);
+        journal.putInt(record, end - record - Integer.BYTES);
+        if(++pending >= syncInterval) {
+            sync();
+        }
+    }
+
+    private Path checkpointPath(long checkpointGeneration) {
+        return directory.resolve("checkpoint-" + checkpointGeneration
+                + ".heap");
+    }
+
+    private Path journalPath(long journalGeneration) {
+        return directory.resolve("journal-" + journalGeneration + ".log");
+    }
+}
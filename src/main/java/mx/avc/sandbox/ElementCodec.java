@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes and decodes heap items to and from a binary representation.
+ * @author alexv
+ * @param <T> the type of the items handled by the codec
+ */
+public interface ElementCodec<T> {
+
+    /**
+     * Encodes 32 bit integers as a raw, fixed width layout.
+     */
+    public static final ElementCodec<Integer> INTEGER =
+            new ElementCodec<Integer>() {
+        @Override
+        public int size(Integer item) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer item, ByteBuffer buffer) {
+            buffer.putInt(item);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    /**
+     * Encodes 64 bit integers as a raw, fixed width layout.
+     */
+    public static final ElementCodec<Long> LONG = new ElementCodec<Long>() {
+        @Override
+        public int size(Long item) {
+            return Long.BYTES;
+        }
+
+        @Override
+        public void encode(Long item, ByteBuffer buffer) {
+            buffer.putLong(item);
+        }
+
+        @Override
+        public Long decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * Encodes doubles as a raw, fixed width layout.
+     */
+    public static final ElementCodec<Double> DOUBLE =
+            new ElementCodec<Double>() {
+        @Override
+        public int size(Double item) {
+            return Double.BYTES;
+        }
+
+        @Override
+        public void encode(Double item, ByteBuffer buffer) {
+            buffer.putDouble(item);
+        }
+
+        @Override
+        public Double decode(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    };
+
+    /**
+     * Encodes strings as a length prefixed UTF-8 sequence.
+     */
+    public static final ElementCodec<String> STRING =
+            new ElementCodec<String>() {
+        @Override
+        public int size(String item) {
+            return Integer.BYTES + item.getBytes(UTF_8).length;
+        }
+
+        @Override
+        public void encode(String item, ByteBuffer buffer) {
+            byte[] bytes = item.getBytes(UTF_8);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        public String decode(ByteBuffer buffer) throws IOException {
+            int length = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) {
+                throw new IOException("invalid string length: " + length);
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    /**
+     * Computes the encoded size of an item.
+     * @param item the item to measure
+     * @return the amount of bytes {@link #encode(Object, ByteBuffer)} writes
+     */
+    public int size(T item);
+
+    /**
+     * Encodes an item at the buffer's current position.
+     * @param item the item to encode
+     * @param buffer the target buffer, with enough room for the item
+     */
+    public void encode(T item, ByteBuffer buffer);
+
+    /**
+     * Decodes an item from the buffer's current position.
+     * @param buffer the source buffer
+     * @return the decoded item
+     * @throws IOException if the buffer doesn't hold a valid item
+     */
+    public T decode(ByteBuffer buffer) throws IOException;
+}
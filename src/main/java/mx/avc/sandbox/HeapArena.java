@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Optional;
+
+/**
+ * Packs many small bounded min-heaps into a single array.
+ * <p>
+ * Every heap has the same fixed capacity and is addressed by an integer id;
+ * heap {@code i} occupies the slots {@code [i * capacity, (i + 1) *
+ * capacity)} of the shared array and its size is kept in a shared
+ * {@code int[]}. A heap thus costs its slots plus four bytes, instead of the
+ * object headers, fields and separate array of one {@link BinaryHeap} per
+ * heap, and neighbouring heaps share cache lines.
+ * <p>
+ * Each heap keeps the greatest items offered to it: once full, an offered
+ * item replaces the top (the smallest kept item) if it is greater, which is
+ * the usual per key top-K aggregation.
+ * @author alexv
+ */
+public class HeapArena<T> {
+
+    private static final int INITIAL_HEAPS = 16;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * The heaps, one after the other.
+     */
+    private T[] items;
+
+    /**
+     * The size of each heap.
+     */
+    private int[] sizes;
+
+    /**
+     * The amount of heaps in use.
+     */
+    private int heapCount;
+
+    /**
+     * The slots per heap.
+     */
+    private final int capacity;
+
+    /**
+     * The {@link java.util.Comparator} used to order the items in the heaps.
+     */
+    private final Comparator<T> comparator;
+
+    /**
+     * Constructs an empty arena.
+     * @param c the comparator used to sort the heap items.
+     * @param heapCapacity the maximum amount of items kept per heap
+     * @param expectedHeaps the amount of heaps to reserve space for
+     */
+    @SuppressWarnings("unchecked")
+    public HeapArena(Comparator<T> c, int heapCapacity, int expectedHeaps) {
+        if(heapCapacity <= 0 || expectedHeaps < 0
+                || (long)heapCapacity * expectedHeaps > MAX_CAPACITY) {
+            throw new IllegalArgumentException();
+        }
+
+        comparator = c;
+        capacity = heapCapacity;
+        items = (T[])new Object[heapCapacity * expectedHeaps];
+        sizes = new int[expectedHeaps];
+        heapCount = 0;
+    }
+
+    /**
+     * Constructs an empty arena.
+     * @param c the comparator used to sort the heap items.
+     * @param heapCapacity the maximum amount of items kept per heap
+     */
+    public HeapArena(Comparator<T> c, int heapCapacity) {
+        this(c, heapCapacity, INITIAL_HEAPS);
+    }
+
+    /**
+     * Constructs an empty arena.
+     * @param heapCapacity the maximum amount of items kept per heap
+     */
+    @SuppressWarnings("unchecked")
+    public HeapArena(int heapCapacity) {
+        this((Comparator<T>)naturalOrder(), heapCapacity);
+    }
+
+    /**
+     * Adds an empty heap to the arena.
+     * @return the id of the new heap
+     */
+    public int newHeap() {
+        if(heapCount == sizes.length) {
+            grow();
+        }
+        return heapCount++;
+    }
+
+    /**
+     * Returns the number of heaps in the arena.
+     * @return the heaps count
+     */
+    public int heapCount() {
+        return heapCount;
+    }
+
+    /**
+     * Returns the maximum amount of items kept per heap.
+     * @return the heap capacity
+     */
+    public int heapCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Offers an item to a heap. The item is added if the heap is not full,
+     * otherwise it replaces the top of the heap if greater.
+     * @param heapId the heap
+     * @param item the item to offer
+     * @return true if the item was kept
+     */
+    public boolean offer(int heapId, T item) {
+        int base = base(heapId);
+        int size = sizes[heapId];
+        if(size < capacity) {
+            items[base + size] = item;
+            sizes[heapId] = size + 1;
+            siftUp(base, size);
+            return true;
+        }
+
+        if(comparator.compare(item, items[base]) <= 0) {
+            return false;
+        }
+        items[base] = item;
+        siftDown(base, size, 0);
+        return true;
+    }
+
+    /**
+     * Retrieve the top most item of a heap without removing it.
+     * @param heapId the heap
+     * @return the smallest item kept; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    public Optional<T> peek(int heapId) {
+        int base = base(heapId);
+        return sizes[heapId] == 0 ? Optional.empty()
+                : Optional.of(items[base]);
+    }
+
+    /**
+     * Retrieve and extract the top most item of a heap.
+     * @param heapId the heap
+     * @return the smallest item kept; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    public Optional<T> pop(int heapId) {
+        int base = base(heapId);
+        int size = sizes[heapId];
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        T top = items[base];
+        int bottom = base + --size;
+        items[base] = items[bottom];
+        items[bottom] = null;
+        sizes[heapId] = size;
+        if(size > 1) {
+            siftDown(base, size, 0);
+        }
+        return Optional.of(top);
+    }
+
+    /**
+     * Extracts all the items of a heap at once, leaving it empty.
+     * @param heapId the heap
+     * @return a heap with the items extracted.
+     */
+    @SuppressWarnings("unchecked")
+    public BinaryHeap<T> drain(int heapId) {
+        int base = base(heapId);
+        int size = sizes[heapId];
+        if(size == 0) {
+            return new BinaryHeap<>(comparator);
+        }
+
+        T[] head = (T[])new Object[size];
+        System.arraycopy(items, base, head, 0, size);
+        Arrays.fill(items, base, base + size, null);
+        sizes[heapId] = 0;
+        return new BinaryHeap<>(head, size, comparator);
+    }
+
+    /**
+     * Returns the number of items in a heap.
+     * @param heapId the heap
+     * @return the items count
+     */
+    public int size(int heapId) {
+        base(heapId);
+        return sizes[heapId];
+    }
+
+    /**
+     * Removes all the heaps from the arena; the ids are reused.
+     */
+    public void clear() {
+        Arrays.fill(items, 0, heapCount * capacity, null);
+        Arrays.fill(sizes, 0, heapCount, 0);
+        heapCount = 0;
+    }
+
+    private int base(int heapId) {
+        if(heapId < 0 || heapId >= heapCount) {
+            throw new IndexOutOfBoundsException("heap: " + heapId);
+        }
+        return heapId * capacity;
+    }
+
+    private void siftUp(int base, int index) {
+        T item = items[base + index];
+        while(index > 0) {
+            int root = (index - 1) / 2;
+            T root_item = items[base + root];
+            if(comparator.compare(root_item, item) < 0) {
+                break;
+            }
+            items[base + index] = root_item;
+            index = root;
+        }
+        items[base + index] = item;
+    }
+
+    private void siftDown(int base, int limit, int index) {
+        T item = items[base + index];
+        int left = index * 2 + 1;
+        while(left < limit) {
+            int smallest = left;
+            T smallest_item = items[base + left];
+            int right = left + 1;
+            if(right < limit && comparator.compare(items[base + right],
+                    smallest_item) < 0) {
+                smallest = right;
+                smallest_item = items[base + right];
+            }
+            if(comparator.compare(smallest_item, item) >= 0) {
+                break;
+            }
+            items[base + index] = smallest_item;
+            index = smallest;
+            left = index * 2 + 1;
+        }
+        items[base + index] = item;
+    }
+
+    private void grow() {
+        int max_heaps = MAX_CAPACITY / capacity;
+        if(heapCount >= max_heaps) {
+            throw new IllegalStateException("arena full");
+        }
+        int heaps = (int)Math.min(max_heaps,
+                Math.max(INITIAL_HEAPS, heapCount + (long)(heapCount >> 1)));
+        items = Arrays.copyOf(items, heaps * capacity);
+        sizes = Arrays.copyOf(sizes, heaps);
+    }
+}
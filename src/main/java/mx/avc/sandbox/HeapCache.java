@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Implements a bounded local cache evicting by priority: the least frequently
+ * used entry, or the entry expiring first.
+ * <p>
+ * The entries are found through a hash index and kept in an indexed binary
+ * heap of its own, ordered by priority: each entry records its position in
+ * the heap, so an access reprioritizes it in place with a sift in
+ * {@code O(log n)}, allocating nothing. {@link BinaryHeap} can't move an item
+ * in place, so the sift loops are copied here, as in the arenas,
+ * {@link StableBinaryHeap} and {@link LongQuantileTracker}, and entries are
+ * evicted one top at a time rather than with {@link BinaryHeap#pop(int)}.
+ * <p>
+ * Room for new entries is made before they are added, by evicting the entries
+ * of lowest priority among the others, so a new entry is never evicted by its
+ * own put; only a {@link #putAll} larger than the cache evicts some of its
+ * own entries, again the ones of lowest priority. Expired entries are
+ * dropped as they reach the top. All the maintenance runs on the calling
+ * thread, and the cache is not thread safe.
+ * @author alexv
+ */
+public class HeapCache<K, V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final Node<?, ?>[] DEFAULT_HEAP = new Node<?, ?>[] {};
+
+    private static final class Node<K, V> {
+
+        private final K key;
+
+        private V value;
+
+        /**
+         * The access count, or the expiry time.
+         */
+        private long priority;
+
+        /**
+         * The last access order, evicting the oldest of equal priorities
+         * first.
+         */
+        private long sequence;
+
+        /**
+         * The position in the heap; negative once the node left the cache.
+         */
+        private int position = -1;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final Map<K, Node<K, V>> index = new HashMap<>();
+
+    /**
+     * The entries as a min-heap by priority.
+     */
+    private Node<K, V>[] heap;
+
+    private int size;
+
+    private final int maximumSize;
+
+    /**
+     * The time to live after the last access; zero to count the accesses
+     * instead.
+     */
+    private final long ttlNanos;
+
+    private final LongSupplier clock;
+
+    private long nextSequence;
+
+    /**
+     * Constructs an empty cache evicting the least frequently used entry;
+     * among equally used entries, the one accessed first is evicted.
+     * @param maximumSize the maximum amount of entries
+     */
+    public HeapCache(int maximumSize) {
+        this(maximumSize, 0, System::nanoTime);
+    }
+
+    /**
+     * Constructs an empty cache expiring the entries not accessed for a given
+     * time; when full, the entry expiring first is evicted.
+     * @param maximumSize the maximum amount of entries
+     * @param ttl the time to live of the entries after their last access
+     * @param unit the time unit of the time to live
+     */
+    public HeapCache(int maximumSize, long ttl, TimeUnit unit) {
+        this(maximumSize, checkTtl(unit.toNanos(ttl)), System::nanoTime);
+    }
+
+    /**
+     * Constructs an empty cache with a custom clock.
+     */
+    @SuppressWarnings("unchecked")
+    HeapCache(int maximumSize, long ttlNanos, LongSupplier clock) {
+        if(maximumSize <= 0 || ttlNanos < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        heap = (Node<K, V>[])DEFAULT_HEAP;
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieves the value of an entry, counting the access.
+     * @param key the key of the entry
+     * @return the value; {@link java.util.Optional#empty()} if the entry is
+     *          not in the cache
+     */
+    public Optional<V> get(K key) {
+        long now = expire();
+        Node<K, V> node = index.get(key);
+        if(node == null) {
+            return Optional.empty();
+        }
+
+        touch(node, now);
+        return Optional.of(node.value);
+    }
+
+    /**
+     * Adds or replaces an entry, counting the access; if the cache is full,
+     * the entry of lowest priority among the others is evicted first.
+     * @param key the key of the entry
+     * @param value the value of the entry
+     * @return the previous value; {@link java.util.Optional#empty()} if the
+     *          entry was not in the cache
+     */
+    public Optional<V> put(K key, V value) {
+        Objects.requireNonNull(value);
+        long now = expire();
+        Node<K, V> node = index.get(key);
+        if(node != null) {
+            V previous = node.value;
+            node.value = value;
+            touch(node, now);
+            return Optional.of(previous);
+        }
+
+        evict(maximumSize - 1);
+        node = new Node<>(key, value);
+        index.put(key, node);
+        touch(node, now);
+        return Optional.empty();
+    }
+
+    /**
+     * Adds or replaces several entries, counting the accesses. Room is made
+     * by evicting the entries not being put first; if the entries alone
+     * overflow the cache, the ones of lowest priority are evicted.
+     * @param entries the entries to add
+     */
+    public void putAll(Map<? extends K, ? extends V> entries) {
+        entries.values().forEach(Objects::requireNonNull);
+        long now = expire();
+        int added = 0;
+        for(K key : entries.keySet()) {
+            if(!index.containsKey(key)) {
+                added++;
+            }
+        }
+
+        // the entries being put are taken out of the heap while making room,
+        // touching them puts them back
+        int taken = 0;
+        while(size > 0 && size + taken + added > maximumSize) {
+            Node<K, V> top = heap[0];
+            removeAt(0);
+            if(entries.containsKey(top.key)) {
+                taken++;
+            } else {
+                index.remove(top.key);
+            }
+        }
+
+        entries.forEach((key, value) -> {
+            Node<K, V> node = index.computeIfAbsent(key,
+                    k -> new Node<>(k, value));
+            node.value = value;
+            touch(node, now);
+        });
+        evict(maximumSize);
+    }
+
+    /**
+     * Removes an entry.
+     * @param key the key of the entry
+     * @return the value removed; {@link java.util.Optional#empty()} if the
+     *          entry was not in the cache
+     */
+    public Optional<V> remove(K key) {
+        Node<K, V> node = index.remove(key);
+        if(node == null) {
+            return Optional.empty();
+        }
+
+        removeAt(node.position);
+        return Optional.of(node.value);
+    }
+
+    /**
+     * Drops the expired entries; the other operations do it as they go.
+     */
+    public void cleanUp() {
+        expire();
+    }
+
+    /**
+     * Returns the number of entries in the cache, expired or not.
+     * @return the entries count
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Indicates if the cache is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * Removes all the entries from the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        for(int position = 0; position < size; position++) {
+            heap[position].position = -1;
+        }
+        index.clear();
+        heap = (Node<K, V>[])DEFAULT_HEAP;
+        size = 0;
+    }
+
+    private static long checkTtl(long ttlNanos) {
+        if(ttlNanos <= 0) {
+            throw new IllegalArgumentException("ttl: " + ttlNanos);
+        }
+        return ttlNanos;
+    }
+
+    /**
+     * Raises the priority of an entry and moves it in place, adding it to the
+     * heap if new.
+     */
+    private void touch(Node<K, V> node, long now) {
+        node.priority = ttlNanos == 0 ? node.priority + 1 : now + ttlNanos;
+        node.sequence = nextSequence++;
+        if(node.position < 0) {
+            if(size == heap.length) {
+                heap = Arrays.copyOf(heap,
+                        Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+            }
+            heap[size] = node;
+            node.position = size;
+            siftUp(size++);
+        } else {
+            // the priority and the sequence only grow
+            siftDown(node.position);
+        }
+    }
+
+    /**
+     * Drops the entries expired by now.
+     * @return the current time
+     */
+    private long expire() {
+        if(ttlNanos == 0) {
+            return 0;
+        }
+
+        long now = clock.getAsLong();
+        while(size > 0 && heap[0].priority - now <= 0) {
+            index.remove(heap[0].key);
+            removeAt(0);
+        }
+        return now;
+    }
+
+    /**
+     * Evicts the entries of lowest priority until at most {@code limit} are
+     * left.
+     */
+    private void evict(int limit) {
+        while(size > limit) {
+            index.remove(heap[0].key);
+            removeAt(0);
+        }
+    }
+
+    private void removeAt(int position) {
+        Node<K, V> node = heap[position];
+        node.position = -1;
+        Node<K, V> bottom = heap[--size];
+        heap[size] = null;
+        if(position == size) {
+            return;
+        }
+
+        heap[position] = bottom;
+        bottom.position = position;
+        siftDown(position);
+        if(heap[position] == bottom) {
+            siftUp(position);
+        }
+    }
+
+    /**
+     * Whether the entry at {@code a} is evicted before the one at {@code b}.
+     */
+    private static boolean before(Node<?, ?> a, Node<?, ?> b) {
+        return a.priority < b.priority
+                || (a.priority == b.priority && a.sequence < b.sequence);
+    }
+
+    private void siftUp(int position) {
+        Node<K, V> node = heap[position];
+        while(position > 0) {
+            int root = (position - 1) / 2;
+            Node<K, V> root_node = heap[root];
+            if(before(root_node, node)) {
+                break;
+            }
+            heap[position] = root_node;
+            root_node.position = position;
+            position = root;
+        }
+        heap[position] = node;
+        node.position = position;
+    }
+
+    private void siftDown(int position) {
+        Node<K, V> node = heap[position];
+        int left = position * 2 + 1;
+        while(left < size) {
+            int child = left;
+            int right = left + 1;
+            if(right < size && before(heap[right], heap[left])) {
+                child = right;
+            }
+            Node<K, V> child_node = heap[child];
+            if(before(node, child_node)) {
+                break;
+            }
+            heap[position] = child_node;
+            child_node.position = position;
+            position = child;
+            left = position * 2 + 1;
+        }
+        heap[position] = node;
+        node.position = position;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+/**
+ * The optional Flight Recorder events emitted by {@link BinaryHeap}.
+ * <p>
+ * This class never links against {@code jdk.jfr}: the event types live in
+ * {@link JfrHeapEvents}, which is only loaded once {@code jdk.jfr} is found,
+ * so the heaps still run on Java 8 builds without Flight Recorder. Each
+ * {@code begin} method returns null, allocating nothing, unless Flight
+ * Recorder is present and a recording has the event enabled; the matching
+ * {@code report} method ignores a null event.
+ * @author alexv
+ */
+final class HeapEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private HeapEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false,
+                    HeapEvents.class.getClassLoader());
+            return true;
+        } catch(ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begins a resize of the backing array of a heap.
+     * @return the event; null if not recorded
+     */
+    static Object beginResize() {
+        return AVAILABLE ? JfrHeapEvents.beginResize() : null;
+    }
+
+    static void reportResize(Object event, int oldCapacity, int newCapacity,
+            int size) {
+        if(event != null) {
+            JfrHeapEvents.reportResize(event, oldCapacity, newCapacity, size);
+        }
+    }
+
+    /**
+     * Begins an operation adding or removing several items at once.
+     * @return the event; null if not recorded
+     */
+    static Object beginBulkOperation() {
+        return AVAILABLE ? JfrHeapEvents.beginBulkOperation() : null;
+    }
+
+    static void reportBulkOperation(Object event, String operation,
+            int count, int size) {
+        if(event != null) {
+            JfrHeapEvents.reportBulkOperation(event, operation, count, size);
+        }
+    }
+
+    /**
+     * Begins a single item operation, reported if over the threshold.
+     * @return the event; null if not recorded
+     */
+    static Object beginSlowOperation() {
+        return AVAILABLE ? JfrHeapEvents.beginSlowOperation() : null;
+    }
+
+    static void reportSlowOperation(Object event, String operation,
+            int size) {
+        if(event != null) {
+            JfrHeapEvents.reportSlowOperation(event, operation, size);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Publishes the contents of a heap in priority order.
+ * <p>
+ * Items are added with {@link #offer(Object)} and delivered to a single
+ * subscriber as it requests them; each {@code request(n)} is served with one
+ * {@link BinaryHeap#pop(int)} batch. When the heap runs dry the subscription
+ * simply waits for new items, and once {@link #close()} is called the
+ * subscriber is completed after the remaining items are delivered. Signals
+ * are emitted from the given {@link Executor}.
+ * <p>
+ * The publisher implements the Reactive Streams interfaces; on Java 9 and
+ * later {@code org.reactivestreams.FlowAdapters} bridges it to
+ * {@code java.util.concurrent.Flow}.
+ * @author alexv
+ */
+public class HeapPublisher<T> implements Publisher<T> {
+
+    private final BinaryHeap<T> heap;
+
+    private final Executor executor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The current subscription; null until subscribed.
+     */
+    private HeapSubscription subscription;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs an empty publisher.
+     * @param c the comparator used to sort the heap items.
+     * @param executor the executor used to emit the signals
+     */
+    public HeapPublisher(Comparator<T> c, Executor executor) {
+        this.heap = new BinaryHeap<>(c);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Constructs an empty publisher emitting from the common pool.
+     * @param c the comparator used to sort the heap items.
+     */
+    public HeapPublisher(Comparator<T> c) {
+        this(c, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs an empty publisher emitting from the common pool.
+     */
+    @SuppressWarnings("unchecked")
+    public HeapPublisher() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Adds an item to be published.
+     * @param value the item to add
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void offer(T value) {
+        lock.lock();
+        try {
+            checkOpen();
+            heap.add(value);
+        } finally {
+            lock.unlock();
+        }
+        signal();
+    }
+
+    /**
+     * Adds items to be published.
+     * @param values the items to add
+     * @throws IllegalStateException if the publisher is closed
+     */
+    public void offerAll(Collection<? extends T> values) {
+        Objects.requireNonNull(values);
+        lock.lock();
+        try {
+            checkOpen();
+            heap.addAll(values);
+        } finally {
+            lock.unlock();
+        }
+        signal();
+    }
+
+    /**
+     * Returns the number of items waiting to be published.
+     * @return the items count
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return heap.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting items; the subscriber is completed once the pending
+     * items are delivered.
+     */
+    public void close() {
+        closed = true;
+        signal();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        HeapSubscription s = new HeapSubscription(subscriber);
+
+        boolean accepted;
+        lock.lock();
+        try {
+            accepted = subscription == null;
+            if(accepted) {
+                subscription = s;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if(accepted) {
+            s.schedule();
+            return;
+        }
+
+        executor.execute(() -> {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "only one subscriber is supported"));
+        });
+    }
+
+    private void checkOpen() {
+        if(closed) {
+            throw new IllegalStateException("publisher closed");
+        }
+    }
+
+    private void signal() {
+        HeapSubscription s;
+        lock.lock();
+        try {
+            s = subscription;
+        } finally {
+            lock.unlock();
+        }
+
+        if(s != null) {
+            s.schedule();
+        }
+    }
+
+    private final class HeapSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Drain requests; only the caller moving it from zero drains.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private volatile boolean cancelled;
+
+        /**
+         * Set once {@code onSubscribe} was emitted.
+         */
+        private boolean started;
+
+        /**
+         * Set once a terminal signal was emitted.
+         */
+        private boolean done;
+
+        private volatile Throwable error;
+
+        private HeapSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if(n <= 0) {
+                error = new IllegalArgumentException(
+                        "non-positive request: " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, extra) ->
+                        current + extra < 0 ? Long.MAX_VALUE : current + extra);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if(pending.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                if(!started) {
+                    started = true;
+                    subscriber.onSubscribe(this);
+                }
+                if(!done && !cancelled) {
+                    emit();
+                }
+                missed = pending.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        private void emit() {
+            if(error != null) {
+                done = true;
+                subscriber.onError(error);
+                return;
+            }
+
+            long requested = demand.get();
+            if(requested > 0) {
+                BinaryHeap<T> batch;
+                lock.lock();
+                try {
+                    batch = heap.pop((int)Math.min(requested,
+                            Integer.MAX_VALUE));
+                } finally {
+                    lock.unlock();
+                }
+
+                int count = batch.size();
+                for(int index = 0; index < count; index++) {
+                    if(cancelled) {
+                        requeue(batch);
+                        return;
+                    }
+                    subscriber.onNext(batch.pop().get());
+                }
+                demand.addAndGet(-count);
+            }
+
+            if(closed && !cancelled && size() == 0) {
+                done = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void requeue(BinaryHeap<T> batch) {
+            lock.lock();
+            try {
+                while(!batch.isEmpty()) {
+                    heap.add(batch.pop().get());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.Comparator;
+
+/**
+ * Writes and restores binary snapshots of a {@link BinaryHeap}.
+ * <p>
+ * The snapshot stores the backing array as it is, already in heap order, so
+ * restoring it is a sequential decode with no re-heapify. The comparator is
+ * not part of the snapshot; a heap must be restored with the same comparator
+ * it was written with.
+ * @author alexv
+ */
+public final class HeapSnapshot {
+
+    private static final int MAGIC = 0x48454150;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    private HeapSnapshot() {
+    }
+
+    /**
+     * Writes a heap snapshot to a file, replacing its contents.
+     * @param <T> the type of the heap items
+     * @param heap the heap to write
+     * @param codec the codec used to encode the items
+     * @param path the target file
+     * @throws IOException if the file cannot be written
+     */
+    public static <T> void write(BinaryHeap<T> heap,
+            ElementCodec<? super T> codec, Path path) throws IOException {
+        T[] items = heap.array();
+        int size = heap.size();
+
+        long length = HEADER_SIZE;
+        for(int index = 0; index < size; index++) {
+            length += codec.size(items[index]);
+        }
+
+        if(length > Integer.MAX_VALUE) {
+            throw new IOException("snapshot exceeds the mapping limit");
+        }
+
+        try(FileChannel channel = FileChannel.open(path, CREATE,
+                TRUNCATE_EXISTING, READ, WRITE)) {
+            MappedByteBuffer buffer = channel.map(READ_WRITE, 0, length);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(size);
+            for(int index = 0; index < size; index++) {
+                codec.encode(items[index], buffer);
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Restores a heap from a snapshot file.
+     * @param <T> the type of the heap items
+     * @param path the snapshot file
+     * @param codec the codec used to decode the items
+     * @param comparator the comparator the heap was written with
+     * @return the restored heap
+     * @throws IOException if the file cannot be read or isn't a snapshot
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> BinaryHeap<T> read(Path path,
+            ElementCodec<? extends T> codec, Comparator<T> comparator)
+            throws IOException {
+        try(FileChannel channel = FileChannel.open(path, READ)) {
+            long length = channel.size();
+            if(length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("invalid snapshot length: " + length);
+            }
+
+            MappedByteBuffer buffer = channel.map(READ_ONLY, 0, length);
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not a heap snapshot: " + path);
+            }
+
+            int size = buffer.getInt();
+            // every item takes at least one byte
+            if(size < 0 || size > buffer.remaining()) {
+                throw new IOException("invalid snapshot size: " + size);
+            }
+
+            T[] items = (T[])new Object[size];
+            try {
+                for(int index = 0; index < size; index++) {
+                    items[index] = codec.decode(buffer);
+                }
+            } catch(BufferUnderflowException e) {
+                throw new IOException("truncated snapshot: " + path, e);
+            }
+
+            return new BinaryHeap<>(items, size, comparator);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * The Flight Recorder events emitted by {@link BinaryHeap}, loaded through
+ * {@link HeapEvents} only when {@code jdk.jfr} is present.
+ * <p>
+ * An event is only created while a recording has its type enabled; its fields
+ * are only filled when the recording wants it. The events can be enabled and
+ * their thresholds tuned from a recording's settings, e.g.
+ * {@code mx.avc.sandbox.HeapSlowOperation#threshold=5 ms}.
+ * <p>
+ * The slow operation event is disabled unless a recording enables it by name:
+ * it is begun on every add, pop and update, slow or not, so under a default
+ * recording it would allocate an event per operation.
+ * @author alexv
+ */
+final class JfrHeapEvents {
+
+    private static final EventType RESIZE =
+            EventType.getEventType(Resize.class);
+
+    private static final EventType BULK_OPERATION =
+            EventType.getEventType(BulkOperation.class);
+
+    private static final EventType SLOW_OPERATION =
+            EventType.getEventType(SlowOperation.class);
+
+    private JfrHeapEvents() {
+    }
+
+    static Object beginResize() {
+        if(!RESIZE.isEnabled()) {
+            return null;
+        }
+        Resize event = new Resize();
+        event.begin();
+        return event;
+    }
+
+    static void reportResize(Object event, int oldCapacity, int newCapacity,
+            int size) {
+        ((Resize)event).report(oldCapacity, newCapacity, size);
+    }
+
+    static Object beginBulkOperation() {
+        if(!BULK_OPERATION.isEnabled()) {
+            return null;
+        }
+        BulkOperation event = new BulkOperation();
+        event.begin();
+        return event;
+    }
+
+    static void reportBulkOperation(Object event, String operation,
+            int count, int size) {
+        ((BulkOperation)event).report(operation, count, size);
+    }
+
+    static Object beginSlowOperation() {
+        if(!SLOW_OPERATION.isEnabled()) {
+            return null;
+        }
+        SlowOperation event = new SlowOperation();
+        event.begin();
+        return event;
+    }
+
+    static void reportSlowOperation(Object event, String operation,
+            int size) {
+        ((SlowOperation)event).report(operation, size);
+    }
+
+    @Name("mx.avc.sandbox.HeapResize")
+    @Label("Heap Resize")
+    @Category({ "Sandbox", "Heap" })
+    @Description("The backing array of a heap was grown or trimmed")
+    static final class Resize extends Event {
+
+        @Label("Old Capacity")
+        int oldCapacity;
+
+        @Label("New Capacity")
+        int newCapacity;
+
+        @Label("Size")
+        @Description("The items in the heap")
+        int size;
+
+        /**
+         * Ends the event and commits it if enabled.
+         */
+        void report(int oldCapacity, int newCapacity, int size) {
+            end();
+            if(shouldCommit()) {
+                this.oldCapacity = oldCapacity;
+                this.newCapacity = newCapacity;
+                this.size = size;
+                commit();
+            }
+        }
+    }
+
+    @Name("mx.avc.sandbox.HeapBulkOperation")
+    @Label("Heap Bulk Operation")
+    @Category({ "Sandbox", "Heap" })
+    @Description("Several items were added to or removed from a heap at once")
+    static final class BulkOperation extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Count")
+        @Description("The items added or removed")
+        int count;
+
+        @Label("Size")
+        @Description("The items in the heap afterwards")
+        int size;
+
+        /**
+         * Ends the event and commits it if enabled.
+         */
+        void report(String operation, int count, int size) {
+            end();
+            if(shouldCommit()) {
+                this.operation = operation;
+                this.count = count;
+                this.size = size;
+                commit();
+            }
+        }
+    }
+
+    @Name("mx.avc.sandbox.HeapSlowOperation")
+    @Label("Heap Slow Operation")
+    @Category({ "Sandbox", "Heap" })
+    @Description("A single item operation on a heap took longer than the"
+            + " threshold")
+    @Threshold("1 ms")
+    @Enabled(false)
+    static final class SlowOperation extends Event {
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Size")
+        @Description("The items in the heap afterwards")
+        int size;
+
+        /**
+         * Ends the event and commits it if enabled and over the threshold.
+         */
+        void report(String operation, int size) {
+            end();
+            if(shouldCommit()) {
+                this.operation = operation;
+                this.size = size;
+                commit();
+            }
+        }
+    }
+}
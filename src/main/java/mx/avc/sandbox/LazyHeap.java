@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Implements a min-heap built lazily by incremental quicksort.
+ * <p>
+ * The initial items are copied as they come, without arranging them. Every
+ * pop partitions the unsorted range holding the next item, quickselect style,
+ * only until that item is in place; the final positions of the pivots found
+ * on the way are kept on a stack and bound the partitions of the next pops.
+ * Extracting the {@code k} smallest of {@code n} items thus costs
+ * {@code O(n + k log k)} expected time, with the first pop paying the
+ * {@code O(n)} part, while the construction costs nothing beyond the copy.
+ * <p>
+ * Items added after the construction go to a {@link BinaryHeap} on the side,
+ * and a pop takes the smaller of both tops.
+ * @author alexv
+ */
+public class LazyHeap<T> implements Heap<T> {
+
+    /**
+     * Ranges up to this size are insertion sorted instead of partitioned.
+     */
+    private static final int INSERTION_THRESHOLD = 8;
+
+    private static final Object[] DEFAULT_ITEMS = new Object[] {};
+
+    /**
+     * The initial items; the ones before {@link #first} were popped.
+     */
+    private T[] items;
+
+    /**
+     * The position of the next item to pop.
+     */
+    private int first;
+
+    /**
+     * The final positions of the pivots, decreasing from the bottom; the
+     * items between two of them are unsorted but bounded by both.
+     */
+    private int[] pivots;
+
+    private int depth;
+
+    /**
+     * The items added after the construction.
+     */
+    private final BinaryHeap<T> added;
+
+    /**
+     * The {@link java.util.Comparator} used to order the items in the heap.
+     */
+    private final Comparator<T> comparator;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     */
+    @SuppressWarnings("unchecked")
+    public LazyHeap(Comparator<T> c) {
+        this(c, (T[])DEFAULT_ITEMS);
+    }
+
+    /**
+     * Constructs an empty heap.
+     */
+    @SuppressWarnings("unchecked")
+    public LazyHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Constructs a pre-populated heap; the items are not arranged until
+     * popped.
+     * @param c the comparator used to sort the heap items.
+     * @param initial the items used to populate the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public LazyHeap(Comparator<T> c, Collection<? extends T> initial) {
+        this(c, (T[])initial.toArray());
+    }
+
+    /**
+     * Constructs a pre-populated heap; the items are not arranged until
+     * popped.
+     * @param initial the items used to populate the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public LazyHeap(Collection<? extends T> initial) {
+        this((Comparator<T>)naturalOrder(), initial);
+    }
+
+    private LazyHeap(Comparator<T> c, T[] initial) {
+        items = initial;
+        first = 0;
+        pivots = new int[] { initial.length, 0, 0, 0, 0, 0, 0, 0 };
+        depth = 1;
+        added = new BinaryHeap<>(c);
+        comparator = c;
+    }
+
+    @Override
+    public Optional<T> peek() {
+        if(first == items.length) {
+            return added.peek();
+        }
+
+        T top = settle();
+        Optional<T> added_top = added.peek();
+        return added_top.isPresent()
+                && comparator.compare(added_top.get(), top) < 0
+                ? added_top : Optional.of(top);
+    }
+
+    @Override
+    public Optional<T> pop() {
+        return size() == 0 ? Optional.empty() : Optional.of(popItem());
+    }
+
+    /**
+     * Retrieve and extract the top most items of the heap, partitioning only
+     * as much as needed to find them.
+     * @param count the amount of items to "pop" from the top of the heap
+     * @return a heap with the items popped.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public BinaryHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        count = Math.min(count, size());
+        T[] head = (T[])new Object[count];
+        for(int index = 0; index < count; index++) {
+            head[index] = popItem();
+        }
+        // sorted, hence already a heap
+        return new BinaryHeap<>(head, count, comparator);
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        if(size() == 0) {
+            return Optional.empty();
+        }
+
+        T top = popItem();
+        added.add(value.get());
+        return Optional.of(top);
+    }
+
+    @Override
+    public void add(T value) {
+        added.add(value);
+    }
+
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        added.addAll(values);
+    }
+
+    @Override
+    public int size() {
+        return items.length - first + added.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        items = (T[])DEFAULT_ITEMS;
+        first = 0;
+        pivots[0] = 0;
+        depth = 1;
+        added.clear();
+    }
+
+    /**
+     * Extracts the top most item; the heap must not be empty.
+     */
+    private T popItem() {
+        if(first == items.length) {
+            return added.pop().get();
+        }
+
+        T top = settle();
+        if(!added.isEmpty()
+                && comparator.compare(added.array()[0], top) < 0) {
+            return added.pop().get();
+        }
+
+        items[first++] = null;
+        depth--;
+        return top;
+    }
+
+    /**
+     * Partitions the range starting at {@link #first} until its smallest
+     * item is in place.
+     * @return the smallest initial item left
+     */
+    private T settle() {
+        int end = pivots[depth - 1];
+        while(end != first) {
+            if(end - first <= INSERTION_THRESHOLD) {
+                insertionSort(first, end);
+                for(int index = end - 1; index >= first; index--) {
+                    push(index);
+                }
+            } else {
+                push(partition(first, end));
+            }
+            end = pivots[depth - 1];
+        }
+        return items[first];
+    }
+
+    /**
+     * Partitions a range around the median of its first, middle and last
+     * items. Items equal to the pivot stop both scans, so runs of duplicates
+     * still split evenly.
+     * @return the final position of the pivot
+     */
+    private int partition(int from, int to) {
+        int last = to - 1;
+        int middle = (from + last) >>> 1;
+        if(comparator.compare(items[middle], items[from]) < 0) {
+            swap(middle, from);
+        }
+        if(comparator.compare(items[last], items[middle]) < 0) {
+            swap(last, middle);
+            if(comparator.compare(items[middle], items[from]) < 0) {
+                swap(middle, from);
+            }
+        }
+        swap(from, middle);
+
+        T pivot = items[from];
+        int i = from;
+        int j = to;
+        while(true) {
+            do {
+                i++;
+            } while(i < to && comparator.compare(items[i], pivot) < 0);
+            do {
+                j--;
+            } while(comparator.compare(items[j], pivot) > 0);
+            if(i >= j) {
+                break;
+            }
+            swap(i, j);
+        }
+        swap(from, j);
+        return j;
+    }
+
+    private void insertionSort(int from, int to) {
+        for(int index = from + 1; index < to; index++) {
+            T item = items[index];
+            int hole = index;
+            while(hole > from
+                    && comparator.compare(item, items[hole - 1]) < 0) {
+                items[hole] = items[hole - 1];
+                hole--;
+            }
+            items[hole] = item;
+        }
+    }
+
+    private void push(int pivot) {
+        if(depth == pivots.length) {
+            pivots = Arrays.copyOf(pivots, depth * 2);
+        }
+        pivots[depth++] = pivot;
+    }
+
+    private void swap(int a, int b) {
+        T item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+    }
+}
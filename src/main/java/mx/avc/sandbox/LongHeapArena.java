@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Packs many small bounded min-heaps of primitive long keys into a single
+ * array.
+ * <p>
+ * The layout and the semantics are those of {@link HeapArena}: heap
+ * {@code i} occupies the slots {@code [i * capacity, (i + 1) * capacity)}
+ * and keeps the greatest keys offered to it. With no references at all, a
+ * heap costs exactly {@code 8 * capacity + 4} bytes.
+ * @author alexv
+ */
+public class LongHeapArena {
+
+    private static final int INITIAL_HEAPS = 16;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * The heaps, one after the other.
+     */
+    private long[] items;
+
+    /**
+     * The size of each heap.
+     */
+    private int[] sizes;
+
+    /**
+     * The amount of heaps in use.
+     */
+    private int heapCount;
+
+    /**
+     * The slots per heap.
+     */
+    private final int capacity;
+
+    /**
+     * Constructs an empty arena.
+     * @param heapCapacity the maximum amount of keys kept per heap
+     * @param expectedHeaps the amount of heaps to reserve space for
+     */
+    public LongHeapArena(int heapCapacity, int expectedHeaps) {
+        if(heapCapacity <= 0 || expectedHeaps < 0
+                || (long)heapCapacity * expectedHeaps > MAX_CAPACITY) {
+            throw new IllegalArgumentException();
+        }
+
+        capacity = heapCapacity;
+        items = new long[heapCapacity * expectedHeaps];
+        sizes = new int[expectedHeaps];
+        heapCount = 0;
+    }
+
+    /**
+     * Constructs an empty arena.
+     * @param heapCapacity the maximum amount of keys kept per heap
+     */
+    public LongHeapArena(int heapCapacity) {
+        this(heapCapacity, INITIAL_HEAPS);
+    }
+
+    /**
+     * Adds an empty heap to the arena.
+     * @return the id of the new heap
+     */
+    public int newHeap() {
+        if(heapCount == sizes.length) {
+            grow();
+        }
+        return heapCount++;
+    }
+
+    /**
+     * Returns the number of heaps in the arena.
+     * @return the heaps count
+     */
+    public int heapCount() {
+        return heapCount;
+    }
+
+    /**
+     * Returns the maximum amount of keys kept per heap.
+     * @return the heap capacity
+     */
+    public int heapCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Offers a key to a heap. The key is added if the heap is not full,
+     * otherwise it replaces the top of the heap if greater.
+     * @param heapId the heap
+     * @param key the key to offer
+     * @return true if the key was kept
+     */
+    public boolean offer(int heapId, long key) {
+        int base = base(heapId);
+        int size = sizes[heapId];
+        if(size < capacity) {
+            items[base + size] = key;
+            sizes[heapId] = size + 1;
+            siftUp(base, size);
+            return true;
+        }
+
+        if(key <= items[base]) {
+            return false;
+        }
+        items[base] = key;
+        siftDown(base, size, 0);
+        return true;
+    }
+
+    /**
+     * Retrieve the top most key of a heap without removing it.
+     * @param heapId the heap
+     * @return the smallest key kept; {@link java.util.OptionalLong#empty()}
+     *          if the heap is empty
+     */
+    public OptionalLong peek(int heapId) {
+        int base = base(heapId);
+        return sizes[heapId] == 0 ? OptionalLong.empty()
+                : OptionalLong.of(items[base]);
+    }
+
+    /**
+     * Retrieve and extract the top most key of a heap.
+     * @param heapId the heap
+     * @return the smallest key kept; {@link java.util.OptionalLong#empty()}
+     *          if the heap is empty
+     */
+    public OptionalLong pop(int heapId) {
+        int base = base(heapId);
+        int size = sizes[heapId];
+        if(size == 0) {
+            return OptionalLong.empty();
+        }
+
+        long top = items[base];
+        items[base] = items[base + --size];
+        sizes[heapId] = size;
+        if(size > 1) {
+            siftDown(base, size, 0);
+        }
+        return OptionalLong.of(top);
+    }
+
+    /**
+     * Extracts all the keys of a heap at once, leaving it empty.
+     * @param heapId the heap
+     * @return the keys extracted, in ascending order.
+     */
+    public long[] drain(int heapId) {
+        int base = base(heapId);
+        long[] keys = Arrays.copyOfRange(items, base, base + sizes[heapId]);
+        sizes[heapId] = 0;
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Returns the number of keys in a heap.
+     * @param heapId the heap
+     * @return the keys count
+     */
+    public int size(int heapId) {
+        base(heapId);
+        return sizes[heapId];
+    }
+
+    /**
+     * Removes all the heaps from the arena; the ids are reused.
+     */
+    public void clear() {
+        Arrays.fill(sizes, 0, heapCount, 0);
+        heapCount = 0;
+    }
+
+    private int base(int heapId) {
+        if(heapId < 0 || heapId >= heapCount) {
+            throw new IndexOutOfBoundsException("heap: " + heapId);
+        }
+        return heapId * capacity;
+    }
+
+    private void siftUp(int base, int index) {
+        long key = items[base + index];
+        while(index > 0) {
+            int root = (index - 1) / 2;
+            long root_key = items[base + root];
+            if(root_key < key) {
+                break;
+            }
+            items[base + index] = root_key;
+            index = root;
+        }
+        items[base + index] = key;
+    }
+
+    private void siftDown(int base, int limit, int index) {
+        long key = items[base + index];
+        int left = index * 2 + 1;
+        while(left < limit) {
+            int smallest = left;
+            long smallest_key = items[base + left];
+            int right = left + 1;
+            if(right < limit && items[base + right] < smallest_key) {
+                smallest = right;
+                smallest_key = items[base + right];
+            }
+            if(smallest_key >= key) {
+                break;
+            }
+            items[base + index] = smallest_key;
+            index = smallest;
+            left = index * 2 + 1;
+        }
+        items[base + index] = key;
+    }
+
+    private void grow() {
+        int max_heaps = MAX_CAPACITY / capacity;
+        if(heapCount >= max_heaps) {
+            throw new IllegalStateException("arena full");
+        }
+        int heaps = (int)Math.min(max_heaps,
+                Math.max(INITIAL_HEAPS, heapCount + (long)(heapCount >> 1)));
+        items = Arrays.copyOf(items, heaps * capacity);
+        sizes = Arrays.copyOf(sizes, heaps);
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Tracks a quantile of a stream of primitive long keys, such as latencies,
+ * over a sliding window.
+ * <p>
+ * Works like {@link QuantileTracker}, without boxing: each heap keeps its
+ * keys and their arrival order in parallel arrays, and the window is a ring
+ * of keys and timestamps.
+ * @author alexv
+ */
+public class LongQuantileTracker {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final long[] DEFAULT_ARRAY = new long[] {};
+
+    /**
+     * A heap of keys ordered by key, then by arrival.
+     */
+    private static final class Side {
+
+        /**
+         * True for a max-heap.
+         */
+        private final boolean max;
+
+        private long[] keys = DEFAULT_ARRAY;
+
+        private long[] sequences = DEFAULT_ARRAY;
+
+        private int size;
+
+        private int live;
+
+        private Side(boolean max) {
+            this.max = max;
+        }
+
+        /**
+         * Whether the entry at {@code a} goes above an entry.
+         */
+        private boolean above(int a, long key, long sequence) {
+            long key_a = keys[a];
+            boolean less = key_a < key
+                    || (key_a == key && sequences[a] < sequence);
+            return less != max;
+        }
+
+        private void add(long key, long sequence) {
+            if(size == keys.length) {
+                int capacity = Math.max(INITIAL_CAPACITY, size + (size >> 1));
+                keys = Arrays.copyOf(keys, capacity);
+                sequences = Arrays.copyOf(sequences, capacity);
+            }
+
+            int index = size++;
+            while(index > 0) {
+                int root = (index - 1) / 2;
+                if(above(root, key, sequence)) {
+                    break;
+                }
+                keys[index] = keys[root];
+                sequences[index] = sequences[root];
+                index = root;
+            }
+            keys[index] = key;
+            sequences[index] = sequence;
+        }
+
+        /**
+         * Places an entry at the top and sifts it down.
+         */
+        private void setTop(long key, long sequence) {
+            int index = 0;
+            int left = 1;
+            while(left < size) {
+                int child = left;
+                int right = left + 1;
+                if(right < size && above(right, keys[left], sequences[left])) {
+                    child = right;
+                }
+                if(!above(child, key, sequence)) {
+                    break;
+                }
+                keys[index] = keys[child];
+                sequences[index] = sequences[child];
+                index = child;
+                left = index * 2 + 1;
+            }
+            keys[index] = key;
+            sequences[index] = sequence;
+        }
+
+        private void pop() {
+            size--;
+            if(size > 0) {
+                setTop(keys[size], sequences[size]);
+            }
+        }
+
+        private void prune(long firstLive) {
+            while(size > 0 && sequences[0] < firstLive) {
+                pop();
+            }
+        }
+
+        private void compact(long firstLive) {
+            int kept = 0;
+            for(int index = 0; index < size; index++) {
+                if(sequences[index] >= firstLive) {
+                    keys[kept] = keys[index];
+                    sequences[kept] = sequences[index];
+                    kept++;
+                }
+            }
+            size = 0;
+            for(int index = 0; index < kept; index++) {
+                add(keys[index], sequences[index]);
+            }
+        }
+
+        private void clear() {
+            keys = DEFAULT_ARRAY;
+            sequences = DEFAULT_ARRAY;
+            size = 0;
+            live = 0;
+        }
+    }
+
+    private final double quantile;
+
+    /**
+     * The max-heap holding the smallest keys.
+     */
+    private final Side lower = new Side(true);
+
+    /**
+     * The min-heap holding the greatest keys.
+     */
+    private final Side upper = new Side(false);
+
+    /**
+     * The keys in the window, oldest first, as a ring.
+     */
+    private long[] windowKeys = DEFAULT_ARRAY;
+
+    private long[] windowTimestamps = DEFAULT_ARRAY;
+
+    private int windowHead;
+
+    /**
+     * The arrival order of the oldest key in the window; the keys arrived
+     * before are expired.
+     */
+    private long firstLive;
+
+    private long nextSequence;
+
+    /**
+     * Constructs an empty tracker.
+     * @param quantile the quantile tracked, in {@code (0, 1]}; 0.5 for the
+     * (lower) median
+     */
+    public LongQuantileTracker(double quantile) {
+        if(!(quantile > 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("quantile: " + quantile);
+        }
+
+        this.quantile = quantile;
+    }
+
+    /**
+     * Adds a key to the window.
+     * @param key the key to add
+     * @param timestamp the time of the key; not less than the previous ones
+     */
+    public void add(long key, long timestamp) {
+        long sequence = nextSequence++;
+        enqueue(key, timestamp);
+
+        int live = size() + 1;
+        if(lower.live < QuantileTracker.target(quantile, live)) {
+            // the lower side grows: takes the new key or the upper top
+            if(upper.live > 0 && upper.above(0, key, sequence)) {
+                long top = upper.keys[0];
+                long top_sequence = upper.sequences[0];
+                upper.setTop(key, sequence);
+                key = top;
+                sequence = top_sequence;
+            }
+            lower.add(key, sequence);
+            lower.live++;
+        } else {
+            // the upper side grows: takes the new key or the lower top
+            if(lower.live > 0 && lower.above(0, key, sequence)) {
+                long top = lower.keys[0];
+                long top_sequence = lower.sequences[0];
+                lower.setTop(key, sequence);
+                key = top;
+                sequence = top_sequence;
+            }
+            upper.add(key, sequence);
+            upper.live++;
+        }
+
+        // replacing a top may uncover an expired key
+        lower.prune(firstLive);
+        upper.prune(firstLive);
+    }
+
+    /**
+     * Adds a key to the window, for windows expired by count only.
+     * @param key the key to add
+     */
+    public void add(long key) {
+        add(key, 0);
+    }
+
+    /**
+     * Expires the oldest keys.
+     * @param count the amount of keys to expire
+     */
+    public void expireOldest(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        for(int i = 0; i < count && size() > 0; i++) {
+            expire();
+        }
+        rebalance();
+    }
+
+    /**
+     * Expires the keys older than a given time.
+     * @param timestamp the time of the oldest key kept
+     */
+    public void expireBefore(long timestamp) {
+        while(size() > 0 && windowTimestamps[windowHead] < timestamp) {
+            expire();
+        }
+        rebalance();
+    }
+
+    /**
+     * Retrieves the quantile of the keys in the window: the smallest key
+     * not exceeded by a {@code q} fraction of the keys.
+     * @return the quantile; {@link java.util.OptionalLong#empty()} if the
+     *          window is empty
+     */
+    public OptionalLong quantile() {
+        return lower.live == 0 ? OptionalLong.empty()
+                : OptionalLong.of(lower.keys[0]);
+    }
+
+    /**
+     * Returns the number of keys in the window.
+     * @return the keys count
+     */
+    public int size() {
+        return lower.live + upper.live;
+    }
+
+    /**
+     * Indicates if the window is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all the keys from the window.
+     */
+    public void clear() {
+        lower.clear();
+        upper.clear();
+        windowKeys = DEFAULT_ARRAY;
+        windowTimestamps = DEFAULT_ARRAY;
+        windowHead = 0;
+        firstLive = nextSequence;
+    }
+
+    private void enqueue(long key, long timestamp) {
+        int count = size();
+        if(count == windowKeys.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, count * 2);
+            windowKeys = unwrap(windowKeys, capacity, count);
+            windowTimestamps = unwrap(windowTimestamps, capacity, count);
+            windowHead = 0;
+        }
+        int tail = (windowHead + count) & (windowKeys.length - 1);
+        windowKeys[tail] = key;
+        windowTimestamps[tail] = timestamp;
+    }
+
+    private long[] unwrap(long[] ring, int capacity, int count) {
+        long[] array = new long[capacity];
+        for(int i = 0; i < count; i++) {
+            array[i] = ring[(windowHead + i) & (ring.length - 1)];
+        }
+        return array;
+    }
+
+    /**
+     * Expires the oldest key; the tops are live, so the side of the key is
+     * told by comparing it with the lower top.
+     */
+    private void expire() {
+        long key = windowKeys[windowHead];
+        windowHead = (windowHead + 1) & (windowKeys.length - 1);
+
+        if(lower.live > 0 && lower.above(0, key, firstLive)) {
+            lower.live--;
+        } else {
+            upper.live--;
+        }
+        firstLive++;
+        lower.prune(firstLive);
+        upper.prune(firstLive);
+    }
+
+    private void rebalance() {
+        int target = QuantileTracker.target(quantile, size());
+        while(lower.live > target) {
+            upper.add(lower.keys[0], lower.sequences[0]);
+            lower.pop();
+            lower.live--;
+            upper.live++;
+            lower.prune(firstLive);
+        }
+        while(lower.live < target) {
+            lower.add(upper.keys[0], upper.sequences[0]);
+            upper.pop();
+            upper.live--;
+            lower.live++;
+            upper.prune(firstLive);
+        }
+
+        if(lower.size + upper.size > 2 * size() + INITIAL_CAPACITY) {
+            lower.compact(firstLive);
+            upper.compact(firstLive);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Implements a min-heap for items with few distinct priorities.
+ * <p>
+ * Items are grouped by their key into FIFO buckets, and only the buckets,
+ * one per distinct key, are kept in the underlying {@link BinaryHeap}. The
+ * heap depth thus depends on the amount of distinct keys instead of the
+ * amount of items: adding an item with a known key only takes the
+ * {@code O(log k)} index lookup, for {@code k} distinct keys, and popping
+ * from a bucket that doesn't empty is constant time. {@link #pop(int)} moves
+ * whole buckets to the resulting heap.
+ * <p>
+ * Items with the same key are popped in insertion order. Keys are told apart
+ * by the key comparator alone, so keys it finds equal share a bucket even if
+ * they aren't {@link Object#equals equal}.
+ * @param <K> the type of the item keys
+ * @param <T> the type of the items
+ * @author alexv
+ */
+public class MultisetHeap<K, T> implements Heap<T> {
+
+    private static final class Bucket<K, T> {
+
+        private final K key;
+
+        private final ArrayDeque<T> items;
+
+        private Bucket(K key, ArrayDeque<T> items) {
+            this.key = key;
+            this.items = items;
+        }
+    }
+
+    private final Function<? super T, ? extends K> keyExtractor;
+
+    private final Comparator<K> keyOrder;
+
+    /**
+     * The non-empty buckets, ordered by key.
+     */
+    private final BinaryHeap<Bucket<K, T>> buckets;
+
+    /**
+     * The non-empty buckets, by key, under the same order as the heap.
+     */
+    private final Map<K, Bucket<K, T>> index;
+
+    /**
+     * The amount of items in all the buckets.
+     */
+    private int size;
+
+    /**
+     * Constructs an empty heap.
+     * @param key the function extracting the priority key of an item
+     * @param c the comparator used to sort the keys
+     */
+    public MultisetHeap(Function<? super T, ? extends K> key,
+            Comparator<K> c) {
+        keyExtractor = Objects.requireNonNull(key);
+        keyOrder = Objects.requireNonNull(c);
+        buckets = new BinaryHeap<>((a, b) -> keyOrder.compare(a.key, b.key));
+        index = new TreeMap<>(keyOrder);
+    }
+
+    /**
+     * Constructs an empty heap, sorting the keys by their natural order.
+     * @param key the function extracting the priority key of an item
+     */
+    @SuppressWarnings("unchecked")
+    public MultisetHeap(Function<? super T, ? extends K> key) {
+        this(key, (Comparator<K>)naturalOrder());
+    }
+
+    /**
+     * Constructs a pre-populated heap.
+     * @param key the function extracting the priority key of an item
+     * @param c the comparator used to sort the keys
+     * @param initial the items used to populate the heap.
+     */
+    public MultisetHeap(Function<? super T, ? extends K> key, Comparator<K> c,
+            Collection<? extends T> initial) {
+        this(key, c);
+        addAll(initial);
+    }
+
+    @Override
+    public Optional<T> peek() {
+        return buckets.peek().map(b -> b.items.peekFirst());
+    }
+
+    @Override
+    public Optional<T> pop() {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        Bucket<K, T> top = buckets.peek().get();
+        T item = top.items.pollFirst();
+        if(top.items.isEmpty()) {
+            buckets.pop();
+            index.remove(top.key);
+        }
+        size--;
+        return Optional.of(item);
+    }
+
+    /**
+     * Retrieve and extract the top most items of the heap. Every bucket but
+     * the last one is moved to the resulting heap as a whole.
+     * @param count the amount of items to "pop" from the top of the heap
+     * @return a heap with all the top-most items requested.
+     */
+    @Override
+    public MultisetHeap<K, T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        MultisetHeap<K, T> head = new MultisetHeap<>(keyExtractor, keyOrder);
+        while(count > 0 && size > 0) {
+            Bucket<K, T> top = buckets.peek().get();
+            int available = top.items.size();
+            if(available <= count) {
+                buckets.pop();
+                index.remove(top.key);
+                head.push(top);
+                size -= available;
+                count -= available;
+            } else {
+                ArrayDeque<T> part = new ArrayDeque<>(count);
+                for(int i = 0; i < count; i++) {
+                    part.addLast(top.items.pollFirst());
+                }
+                head.push(new Bucket<>(top.key, part));
+                size -= count;
+                count = 0;
+            }
+        }
+        return head;
+    }
+
+    /**
+     * Replaces the top-most item. Since the new item may have a different key
+     * it is placed at the end of its bucket.
+     * @param value a supplier for the new value of the top most item; the value
+     * is not retrieved if the heap is empty.
+     * @return the old value of the top most item is the heap wasn't empty
+     */
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        T item = value.get();
+        Optional<T> top = pop();
+        add(item);
+        return top;
+    }
+
+    @Override
+    public void add(T value) {
+        K key = keyExtractor.apply(value);
+        Bucket<K, T> bucket = index.get(key);
+        if(bucket == null) {
+            bucket = new Bucket<>(key, new ArrayDeque<>());
+            index.put(key, bucket);
+            buckets.add(bucket);
+        }
+        bucket.items.addLast(value);
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        buckets.clear();
+        index.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of distinct keys in the heap.
+     * @return the non-empty buckets count
+     */
+    public int distinctKeys() {
+        return index.size();
+    }
+
+    /**
+     * Adds a bucket whose key is not in the heap.
+     */
+    private void push(Bucket<K, T> bucket) {
+        index.put(bucket.key, bucket);
+        buckets.add(bucket);
+        size += bucket.items.size();
+    }
+}
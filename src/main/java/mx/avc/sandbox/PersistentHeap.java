@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Implements an immutable min-heap as a leftist tree.
+ * <p>
+ * Every mutation returns a new version of the heap in {@code O(log n)},
+ * sharing all but the nodes along one right spine with the previous version,
+ * which stays valid. A writer can thus publish each version through a
+ * volatile reference, and readers can use a point-in-time snapshot for as long
+ * as needed without locks nor copies.
+ * @author alexv
+ */
+public final class PersistentHeap<T> implements Iterable<T> {
+
+    private static final class Node<T> {
+
+        private final T item;
+
+        private final Node<T> left;
+
+        private final Node<T> right;
+
+        /**
+         * The length of the right spine; never larger on the right subtree.
+         */
+        private final int rank;
+
+        private final int size;
+
+        private Node(T item, Node<T> a, Node<T> b) {
+            this.item = item;
+            if(rank(a) >= rank(b)) {
+                left = a;
+                right = b;
+            } else {
+                left = b;
+                right = a;
+            }
+            this.rank = rank(right) + 1;
+            this.size = size(a) + size(b) + 1;
+        }
+    }
+
+    private final Node<T> root;
+
+    /**
+     * The {@link java.util.Comparator} used to order the items in the heap.
+     */
+    private final Comparator<T> comparator;
+
+    private PersistentHeap(Node<T> root, Comparator<T> comparator) {
+        this.root = root;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Returns an empty heap.
+     * @param <T> the type of the items
+     * @param c the comparator used to sort the heap items.
+     * @return the empty heap
+     */
+    public static <T> PersistentHeap<T> empty(Comparator<T> c) {
+        return new PersistentHeap<>(null, Objects.requireNonNull(c));
+    }
+
+    /**
+     * Returns an empty heap.
+     * @param <T> the type of the items
+     * @return the empty heap
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentHeap<T> empty() {
+        return empty((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Returns a heap with the given items, built in {@code O(n)} by merging
+     * pairs of heaps.
+     * @param <T> the type of the items
+     * @param c the comparator used to sort the heap items.
+     * @param initial the items used to populate the heap.
+     * @return the populated heap
+     */
+    public static <T> PersistentHeap<T> of(Comparator<T> c,
+            Collection<? extends T> initial) {
+        return empty(c).addAll(initial);
+    }
+
+    /**
+     * Returns a heap with the given items.
+     * @param <T> the type of the items
+     * @param initial the items used to populate the heap.
+     * @return the populated heap
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentHeap<T> of(Collection<? extends T> initial) {
+        return of((Comparator<T>)naturalOrder(), initial);
+    }
+
+    /**
+     * Retrieve the top most item of the heap.
+     * @return the top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    public Optional<T> peek() {
+        return root == null ? Optional.empty() : Optional.of(root.item);
+    }
+
+    /**
+     * Returns the heap without its top most item.
+     * @return the heap without the top-most item; this heap if empty
+     */
+    public PersistentHeap<T> pop() {
+        return root == null ? this :
+                new PersistentHeap<>(merge(root.left, root.right), comparator);
+    }
+
+    /**
+     * Returns the heap with its top-most item replaced.
+     * @param value the new value of the top-most item
+     * @return the updated heap; this heap if empty
+     */
+    public PersistentHeap<T> update(T value) {
+        return root == null ? this : pop().add(value);
+    }
+
+    /**
+     * Returns the heap with an added item.
+     * @param value the item to add
+     * @return the heap with the item
+     */
+    public PersistentHeap<T> add(T value) {
+        return new PersistentHeap<>(
+                merge(root, new Node<>(value, null, null)), comparator);
+    }
+
+    /**
+     * Returns the heap with added items.
+     * @param values the items to add
+     * @return the heap with the items
+     */
+    public PersistentHeap<T> addAll(Collection<? extends T> values) {
+        Deque<Node<T>> pending = new ArrayDeque<>(values.size() + 1);
+        if(root != null) {
+            pending.add(root);
+        }
+        for(T value : values) {
+            pending.add(new Node<>(value, null, null));
+        }
+        if(pending.isEmpty()) {
+            return this;
+        }
+
+        while(pending.size() > 1) {
+            pending.add(merge(pending.poll(), pending.poll()));
+        }
+        return new PersistentHeap<>(pending.poll(), comparator);
+    }
+
+    /**
+     * Returns the union of two heaps in {@code O(log n)}.
+     * @param other the heap to merge; it must use the same comparator
+     * @return the heap with the items of both heaps
+     */
+    public PersistentHeap<T> merge(PersistentHeap<T> other) {
+        return new PersistentHeap<>(merge(root, other.root), comparator);
+    }
+
+    /**
+     * Returns the number of items in the heap
+     * @return the items count
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Indicates if the heap is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Iterates over the items in no particular order.
+     * @return an iterator over the items
+     */
+    @Override
+    public Iterator<T> iterator() {
+        Deque<Node<T>> pending = new ArrayDeque<>();
+        if(root != null) {
+            pending.push(root);
+        }
+
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return !pending.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                Node<T> node = pending.poll();
+                if(node == null) {
+                    throw new NoSuchElementException();
+                }
+                if(node.right != null) {
+                    pending.push(node.right);
+                }
+                if(node.left != null) {
+                    pending.push(node.left);
+                }
+                return node.item;
+            }
+        };
+    }
+
+    /**
+     * Merges two trees, copying only the nodes along the right spines.
+     */
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if(a == null) {
+            return b;
+        }
+        if(b == null) {
+            return a;
+        }
+        if(comparator.compare(b.item, a.item) < 0) {
+            Node<T> t = a;
+            a = b;
+            b = t;
+        }
+        return new Node<>(a.item, a.left, merge(a.right, b));
+    }
+
+    private static int rank(Node<?> node) {
+        return node == null ? 0 : node.rank;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+}
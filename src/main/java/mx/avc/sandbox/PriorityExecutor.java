@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Executes tasks in priority order on a fixed set of worker threads.
+ * <p>
+ * Pending tasks are kept in a {@link ShardedHeap}, so submitting threads
+ * only lock the shard of the calling thread and never contend on a single
+ * queue lock; a {@link Semaphore} counts the queued tasks to park idle
+ * workers. A task with priority
+ * {@code p} submitted at time {@code t} is ranked by
+ * {@code t + p * agingNanos}: lower priorities run first, and a task waiting
+ * for {@code agingNanos} gains one priority level, so low priority tasks
+ * cannot starve. Since every task ages at the same pace the rank never has to
+ * be recomputed. A task with a deadline is ranked no later than
+ * {@code deadline - agingNanos}, so it overtakes the tasks ranked after that
+ * however low its priority.
+ * <p>
+ * Each worker claims up to {@code batchSize} queued tasks from the semaphore
+ * and takes them with a single {@link ShardedHeap#pop(int)}, under a lock
+ * shared by the workers only, then runs them in order. The workers are
+ * created by the given {@link ThreadFactory}, which may create platform or
+ * virtual threads.
+ * @author alexv
+ */
+public class PriorityExecutor extends AbstractExecutorService {
+
+    /**
+     * The priority of tasks submitted through the plain
+     * {@link java.util.concurrent.ExecutorService} methods.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static final Comparator<PrioritizedTask<?>> TASK_ORDER =
+            Comparator.<PrioritizedTask<?>>comparingLong(task -> task.rank)
+                    .thenComparingLong(task -> task.sequence);
+
+    /**
+     * Queue latency statistics for one priority level.
+     */
+    public static final class LatencyStats {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Returns the amount of tasks started.
+         * @return the task count
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the mean time the tasks spent queued.
+         * @return the mean queue latency, in nanoseconds
+         */
+        public long getMeanNanos() {
+            long c = count.sum();
+            return c == 0 ? 0 : totalNanos.sum() / c;
+        }
+
+        /**
+         * Returns the longest time a task spent queued.
+         * @return the maximum queue latency, in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+    }
+
+    private final class PrioritizedTask<V> extends FutureTask<V> {
+
+        private final int priority;
+
+        private final long submitted;
+
+        private final long rank;
+
+        private final long sequence;
+
+        private PrioritizedTask(Callable<V> callable, int priority,
+                long deadline) {
+            super(callable);
+            this.priority = priority;
+            this.submitted = clock.getAsLong();
+            this.rank = rank(submitted, priority, deadline);
+            this.sequence = sequencer.getAndIncrement();
+        }
+
+        private PrioritizedTask(Runnable runnable, V result, int priority,
+                long deadline) {
+            super(runnable, result);
+            this.priority = priority;
+            this.submitted = clock.getAsLong();
+            this.rank = rank(submitted, priority, deadline);
+            this.sequence = sequencer.getAndIncrement();
+        }
+    }
+
+    private final ShardedHeap<PrioritizedTask<?>> queue =
+            new ShardedHeap<>(TASK_ORDER);
+
+    /**
+     * One permit per queued task.
+     */
+    private final Semaphore available = new Semaphore(0);
+
+    /**
+     * Confines the consumer side of the queue to one worker at a time.
+     */
+    private final ReentrantLock consumer = new ReentrantLock();
+
+    private final List<Thread> workers;
+
+    private final int batchSize;
+
+    private final long agingNanos;
+
+    private final LongSupplier clock;
+
+    private final AtomicLong sequencer = new AtomicLong();
+
+    private final ConcurrentMap<Integer, LatencyStats> latencies =
+            new ConcurrentHashMap<>();
+
+    private final CountDownLatch terminated;
+
+    /**
+     * The workers waiting for a task.
+     */
+    private final Set<Thread> idle = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean shutdown;
+
+    /**
+     * Set by {@link #shutdownNow()}; dequeued tasks are cancelled.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructs and starts an executor.
+     * @param threads the amount of worker threads
+     * @param factory the factory creating the worker threads
+     * @param batchSize the maximum amount of tasks a worker dequeues at once
+     * @param aging the wait time that raises a task one priority level
+     * @param unit the time unit of the aging
+     */
+    public PriorityExecutor(int threads, ThreadFactory factory, int batchSize,
+            long aging, TimeUnit unit) {
+        this(threads, factory, batchSize, unit.toNanos(aging),
+                System::nanoTime);
+    }
+
+    /**
+     * Constructs and starts an executor dequeuing one task at a time, aging
+     * tasks one level per second.
+     * @param threads the amount of worker threads
+     * @param factory the factory creating the worker threads
+     */
+    public PriorityExecutor(int threads, ThreadFactory factory) {
+        this(threads, factory, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Constructs and starts an executor with a custom clock.
+     */
+    PriorityExecutor(int threads, ThreadFactory factory, int batchSize,
+            long agingNanos, LongSupplier clock) {
+        if(threads <= 0 || batchSize <= 0 || agingNanos <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.batchSize = batchSize;
+        this.agingNanos = agingNanos;
+        this.clock = clock;
+        this.terminated = new CountDownLatch(threads);
+
+        List<Thread> w = new ArrayList<>(threads);
+        for(int i = 0; i < threads; i++) {
+            w.add(factory.newThread(this::work));
+        }
+        workers = Collections.unmodifiableList(w);
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * Executes a task with the given priority.
+     * @param command the task to execute
+     * @param priority the task priority; lower values run first
+     */
+    public void execute(Runnable command, int priority) {
+        enqueue(new PrioritizedTask<Void>(command, null, priority,
+                Long.MAX_VALUE));
+    }
+
+    /**
+     * Submits a task with the given priority.
+     * @param <V> the type of the task result
+     * @param task the task to execute
+     * @param priority the task priority; lower values run first
+     * @return a future holding the task result
+     */
+    public <V> FutureTask<V> submit(Callable<V> task, int priority) {
+        return submit(task, priority, Long.MAX_VALUE);
+    }
+
+    /**
+     * Submits a task with the given priority and deadline; the task is ranked
+     * no later than {@code agingNanos} before its deadline.
+     * @param <V> the type of the task result
+     * @param task the task to execute
+     * @param priority the task priority; lower values run first
+     * @param deadline the task deadline, in {@link System#nanoTime()} units
+     * @return a future holding the task result
+     */
+    public <V> FutureTask<V> submit(Callable<V> task, int priority,
+            long deadline) {
+        Objects.requireNonNull(task);
+        PrioritizedTask<V> future = new PrioritizedTask<>(task, priority,
+                deadline);
+        enqueue(future);
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command);
+        if(command instanceof PrioritizedTask) {
+            enqueue((PrioritizedTask<?>)command);
+        } else {
+            execute(command, DEFAULT_PRIORITY);
+        }
+    }
+
+    @Override
+    protected <V> FutureTask<V> newTaskFor(Callable<V> callable) {
+        return new PrioritizedTask<>(callable, DEFAULT_PRIORITY,
+                Long.MAX_VALUE);
+    }
+
+    @Override
+    protected <V> FutureTask<V> newTaskFor(Runnable runnable, V value) {
+        return new PrioritizedTask<>(runnable, value, DEFAULT_PRIORITY,
+                Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the queue latency statistics, per priority level.
+     * @return the statistics, sorted by priority
+     */
+    public Map<Integer, LatencyStats> getLatencyStats() {
+        return Collections.unmodifiableMap(new TreeMap<>(latencies));
+    }
+
+    /**
+     * Returns the amount of tasks waiting to run.
+     * @return the queued tasks count
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        idle.forEach(Thread::interrupt);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        stopped = true;
+
+        List<Runnable> pending = new ArrayList<>();
+        BinaryHeap<PrioritizedTask<?>> tasks = take(available.drainPermits());
+        while(!tasks.isEmpty()) {
+            pending.add(tasks.pop().get());
+        }
+        workers.forEach(Thread::interrupt);
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    /**
+     * Ranks a task so that waiting {@code agingNanos} is worth one priority
+     * level, and no later than {@code agingNanos} before its deadline; the
+     * priority boost saturates instead of overflowing.
+     */
+    private long rank(long submitted, int priority, long deadline) {
+        long boost = priority * agingNanos;
+        if(boost / agingNanos != priority) {
+            boost = priority < 0 ? Long.MIN_VALUE >> 1 : Long.MAX_VALUE >> 1;
+        }
+        long rank = submitted + boost;
+        if(deadline != Long.MAX_VALUE) {
+            rank = Math.min(rank,
+                    Math.max(deadline, Long.MIN_VALUE + agingNanos)
+                            - agingNanos);
+        }
+        return rank;
+    }
+
+    /**
+     * Queues a task unless shut down. The shutdown flag is checked again
+     * once the task is queued: if it was set meanwhile the workers may have
+     * exited already, so the task is cancelled and rejected, unless a worker
+     * got to run it first. Otherwise its permit is visible to any worker that
+     * sees the flag, and the workers only exit once no permit is left.
+     */
+    private void enqueue(PrioritizedTask<?> task) {
+        if(shutdown) {
+            throw new RejectedExecutionException("executor shut down");
+        }
+
+        queue.add(task);
+        available.release();
+        if(shutdown && task.cancel(false)) {
+            throw new RejectedExecutionException("executor shut down");
+        }
+    }
+
+    /**
+     * Pops up to {@code count} claimed tasks, in order.
+     */
+    private BinaryHeap<PrioritizedTask<?>> take(int count) {
+        consumer.lock();
+        try {
+            return queue.pop(count);
+        } finally {
+            consumer.unlock();
+        }
+    }
+
+    private void work() {
+        Thread self = Thread.currentThread();
+        try {
+            while(true) {
+                idle.add(self);
+                try {
+                    // once shut down, another worker may claim the last
+                    // permits first, so never wait for them
+                    if(shutdown) {
+                        if(!available.tryAcquire()) {
+                            break;
+                        }
+                    } else {
+                        available.acquire();
+                    }
+                } catch(InterruptedException e) {
+                    continue;
+                } finally {
+                    idle.remove(self);
+                }
+
+                int count = 1;
+                while(count < batchSize && available.tryAcquire()) {
+                    count++;
+                }
+
+                BinaryHeap<PrioritizedTask<?>> batch = take(count);
+                while(!batch.isEmpty()) {
+                    PrioritizedTask<?> task = batch.pop().get();
+                    if(stopped) {
+                        task.cancel(false);
+                        continue;
+                    }
+                    if(task.isCancelled()) {
+                        continue;
+                    }
+
+                    latencies.computeIfAbsent(task.priority,
+                            p -> new LatencyStats())
+                            .record(clock.getAsLong() - task.submitted);
+                    Thread.interrupted();
+                    task.run();
+                }
+            }
+        } finally {
+            terminated.countDown();
+        }
+    }
+}
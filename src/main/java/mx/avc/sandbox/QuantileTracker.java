@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Optional;
+import static mx.avc.sandbox.BaseBinaryHeap.heapify;
+import static mx.avc.sandbox.BaseBinaryHeap.replaceTop;
+import static mx.avc.sandbox.BaseBinaryHeap.siftDown;
+import static mx.avc.sandbox.BaseBinaryHeap.siftUp;
+
+/**
+ * Tracks a quantile of a stream of items, such as the median or the 90th
+ * percentile, over a sliding window.
+ * <p>
+ * The items are split in two heaps: a max-heap with the {@code ceil(q * n)}
+ * smallest items, whose top is the quantile, and a min-heap with the rest.
+ * An item entering moves at most one top across, replacing it in place, so
+ * it costs two sifts at most and the quantile is always read in
+ * {@code O(1)}.
+ * <p>
+ * Items leave the window oldest first, either by count or by timestamp.
+ * Expired items are not searched for in the heaps: only the count of live
+ * items of their side is updated, and they are dropped once they reach a top.
+ * The heaps are compacted when the expired items outnumber the live ones.
+ * Equal items are told apart by their arrival order.
+ * @author alexv
+ */
+public class QuantileTracker<T> {
+
+    private static final int INITIAL_CAPACITY = 15;
+
+    private static final Entry<?>[] DEFAULT_HEAP = new Entry<?>[] {};
+
+    private static final class Entry<T> {
+
+        private final T item;
+
+        private final long timestamp;
+
+        /**
+         * The arrival order.
+         */
+        private final long sequence;
+
+        private Entry(T item, long timestamp, long sequence) {
+            this.item = item;
+            this.timestamp = timestamp;
+            this.sequence = sequence;
+        }
+    }
+
+    private final double quantile;
+
+    /**
+     * Orders the entries by item, then by arrival.
+     */
+    private final Comparator<Entry<T>> order;
+
+    private final Comparator<Entry<T>> reverseOrder;
+
+    /**
+     * The max-heap holding the smallest items.
+     */
+    private Entry<T>[] lower;
+
+    private int lowerSize;
+
+    private int lowerLive;
+
+    /**
+     * The min-heap holding the greatest items.
+     */
+    private Entry<T>[] upper;
+
+    private int upperSize;
+
+    private int upperLive;
+
+    /**
+     * The live entries, oldest first.
+     */
+    private final ArrayDeque<Entry<T>> window = new ArrayDeque<>();
+
+    /**
+     * The entries arrived before this one are expired.
+     */
+    private long firstLive;
+
+    private long nextSequence;
+
+    /**
+     * Constructs an empty tracker.
+     * @param c the comparator used to sort the items.
+     * @param quantile the quantile tracked, in {@code (0, 1]}; 0.5 for the
+     * (lower) median
+     */
+    @SuppressWarnings("unchecked")
+    public QuantileTracker(Comparator<T> c, double quantile) {
+        if(!(quantile > 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("quantile: " + quantile);
+        }
+
+        this.quantile = quantile;
+        Comparator<Entry<T>> by_item = (a, b) -> c.compare(a.item, b.item);
+        order = by_item.thenComparingLong(e -> e.sequence);
+        reverseOrder = order.reversed();
+        lower = (Entry<T>[])DEFAULT_HEAP;
+        upper = (Entry<T>[])DEFAULT_HEAP;
+    }
+
+    /**
+     * Constructs an empty tracker.
+     * @param quantile the quantile tracked, in {@code (0, 1]}; 0.5 for the
+     * (lower) median
+     */
+    @SuppressWarnings("unchecked")
+    public QuantileTracker(double quantile) {
+        this((Comparator<T>)naturalOrder(), quantile);
+    }
+
+    /**
+     * Adds an item to the window.
+     * @param item the item to add
+     * @param timestamp the time of the item; not less than the previous ones
+     */
+    public void add(T item, long timestamp) {
+        Entry<T> entry = new Entry<>(item, timestamp, nextSequence++);
+        window.addLast(entry);
+
+        int live = lowerLive + upperLive + 1;
+        if(lowerLive < target(live)) {
+            // the lower side grows: takes the new entry or the upper top
+            if(upperLive > 0 && order.compare(upper[0], entry) < 0) {
+                entry = replaceTop(upper, order, upperSize, entry);
+            }
+            lowerAdd(entry);
+            lowerLive++;
+        } else {
+            // the upper side grows: takes the new entry or the lower top
+            if(lowerLive > 0 && order.compare(entry, lower[0]) < 0) {
+                entry = replaceTop(lower, reverseOrder, lowerSize, entry);
+            }
+            upperAdd(entry);
+            upperLive++;
+        }
+
+        // replacing a top may uncover an expired entry
+        pruneLower();
+        pruneUpper();
+    }
+
+    /**
+     * Adds an item to the window, for windows expired by count only.
+     * @param item the item to add
+     */
+    public void add(T item) {
+        add(item, 0);
+    }
+
+    /**
+     * Expires the oldest items.
+     * @param count the amount of items to expire
+     */
+    public void expireOldest(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        for(int i = 0; i < count && !window.isEmpty(); i++) {
+            expire(window.removeFirst());
+        }
+        rebalance();
+    }
+
+    /**
+     * Expires the items older than a given time.
+     * @param timestamp the time of the oldest item kept
+     */
+    public void expireBefore(long timestamp) {
+        while(!window.isEmpty() && window.peekFirst().timestamp < timestamp) {
+            expire(window.removeFirst());
+        }
+        rebalance();
+    }
+
+    /**
+     * Retrieves the quantile of the items in the window: the smallest item
+     * not exceeded by a {@code q} fraction of the items.
+     * @return the quantile; {@link java.util.Optional#empty()} if the window
+     *          is empty
+     */
+    public Optional<T> quantile() {
+        return lowerLive == 0 ? Optional.empty() : Optional.of(lower[0].item);
+    }
+
+    /**
+     * Returns the number of items in the window.
+     * @return the items count
+     */
+    public int size() {
+        return lowerLive + upperLive;
+    }
+
+    /**
+     * Indicates if the window is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes all the items from the window.
+     */
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        window.clear();
+        lower = (Entry<T>[])DEFAULT_HEAP;
+        upper = (Entry<T>[])DEFAULT_HEAP;
+        lowerSize = lowerLive = 0;
+        upperSize = upperLive = 0;
+        firstLive = nextSequence;
+    }
+
+    /**
+     * The size of the lower side for a given amount of items.
+     */
+    private int target(int live) {
+        return target(quantile, live);
+    }
+
+    /**
+     * The nearest rank of a quantile; products landing a rounding error above
+     * an integer, like {@code 0.9 * 10}, are rounded down.
+     */
+    static int target(double quantile, int live) {
+        double rank = quantile * live;
+        return (int)Math.ceil(rank - rank * 1e-12);
+    }
+
+    private boolean isExpired(Entry<T> entry) {
+        return entry.sequence < firstLive;
+    }
+
+    /**
+     * Accounts an entry as expired; the tops are live, so the side of the
+     * entry is told by comparing it with the lower top.
+     */
+    private void expire(Entry<T> entry) {
+        if(lowerLive > 0 && order.compare(entry, lower[0]) <= 0) {
+            lowerLive--;
+        } else {
+            upperLive--;
+        }
+        firstLive = entry.sequence + 1;
+        pruneLower();
+        pruneUpper();
+    }
+
+    private void rebalance() {
+        int target = target(lowerLive + upperLive);
+        while(lowerLive > target) {
+            upperAdd(lowerPop());
+            lowerLive--;
+            upperLive++;
+            pruneLower();
+        }
+        while(lowerLive < target) {
+            lowerAdd(upperPop());
+            upperLive--;
+            lowerLive++;
+            pruneUpper();
+        }
+
+        if(lowerSize + upperSize > 2 * (lowerLive + upperLive)
+                + INITIAL_CAPACITY) {
+            compact();
+        }
+    }
+
+    private void pruneLower() {
+        while(lowerSize > 0 && isExpired(lower[0])) {
+            lowerPop();
+        }
+    }
+
+    private void pruneUpper() {
+        while(upperSize > 0 && isExpired(upper[0])) {
+            upperPop();
+        }
+    }
+
+    private void lowerAdd(Entry<T> entry) {
+        if(lowerSize == lower.length) {
+            lower = Arrays.copyOf(lower, grow(lowerSize));
+        }
+        lower[lowerSize++] = entry;
+        siftUp(lower, reverseOrder, lowerSize, lowerSize - 1);
+    }
+
+    private void upperAdd(Entry<T> entry) {
+        if(upperSize == upper.length) {
+            upper = Arrays.copyOf(upper, grow(upperSize));
+        }
+        upper[upperSize++] = entry;
+        siftUp(upper, order, upperSize, upperSize - 1);
+    }
+
+    private Entry<T> lowerPop() {
+        Entry<T> top = lower[0];
+        lower[0] = lower[--lowerSize];
+        lower[lowerSize] = null;
+        siftDown(lower, reverseOrder, lowerSize, 0);
+        return top;
+    }
+
+    private Entry<T> upperPop() {
+        Entry<T> top = upper[0];
+        upper[0] = upper[--upperSize];
+        upper[upperSize] = null;
+        siftDown(upper, order, upperSize, 0);
+        return top;
+    }
+
+    /**
+     * Drops the expired entries from both heaps.
+     */
+    private void compact() {
+        lowerSize = retainLive(lower, lowerSize);
+        heapify(lower, reverseOrder, lowerSize);
+        upperSize = retainLive(upper, upperSize);
+        heapify(upper, order, upperSize);
+    }
+
+    private int retainLive(Entry<T>[] heap, int size) {
+        int kept = 0;
+        for(int index = 0; index < size; index++) {
+            if(!isExpired(heap[index])) {
+                heap[kept++] = heap[index];
+            }
+        }
+        Arrays.fill(heap, kept, size, null);
+        return kept;
+    }
+
+    private static int grow(int size) {
+        return Math.max(INITIAL_CAPACITY, size + (size >> 1));
+    }
+}
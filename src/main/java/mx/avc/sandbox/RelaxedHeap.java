@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Implements a relaxed thread-safe min-heap, trading exact order for
+ * scalability.
+ * <p>
+ * The items are spread over {@code m} shards, each a {@link BinaryHeap} with
+ * its own lock and a published top. An add goes to a uniformly random shard;
+ * if its lock is taken it retries with another one instead of waiting. A pop
+ * compares the published tops of two random shards without locking, and pops
+ * the smaller one, retrying the same way. There is no shared root to contend
+ * on.
+ * <p>
+ * A pop thus returns the top of one of the shards instead of the global top.
+ * This is the two-choice multi-queue scheme: since every item lands in a
+ * random shard, whatever the producer, the expected rank error of a pop (the
+ * amount of items in the heap that were smaller than the popped one) is
+ * {@code O(m)}, and exceeding {@code m log m} is unlikely.
+ * {@link #peek()} scans every shard and returns the smallest published top.
+ * <p>
+ * Items cannot be null.
+ * @author alexv
+ */
+public class RelaxedHeap<T> implements Heap<T> {
+
+    /**
+     * The failed lock attempts before an add or a pop waits for a lock.
+     */
+    private static final int MAX_ATTEMPTS = 8;
+
+    private static final class Shard<T> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final BinaryHeap<T> heap;
+
+        /**
+         * The published top; null if empty.
+         */
+        private volatile T top;
+
+        /**
+         * The published size.
+         */
+        private volatile int size;
+
+        private Shard(Comparator<T> c) {
+            heap = new BinaryHeap<>(c);
+        }
+
+        /**
+         * Publishes the top and size; the caller must hold the lock.
+         */
+        private void publish() {
+            size = heap.size();
+            top = size == 0 ? null : heap.array()[0];
+        }
+    }
+
+    private final Comparator<T> comparator;
+
+    private final Shard<T>[] shards;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     * @param shardCount the number of shards; about twice the amount of
+     * threads using the heap
+     */
+    @SuppressWarnings("unchecked")
+    public RelaxedHeap(Comparator<T> c, int shardCount) {
+        if(shardCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        comparator = c;
+        shards = (Shard<T>[])new Shard<?>[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>(c);
+        }
+    }
+
+    /**
+     * Constructs an empty heap with two shards per available processor.
+     * @param c the comparator used to sort the heap items.
+     */
+    public RelaxedHeap(Comparator<T> c) {
+        this(c, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty heap with two shards per available processor.
+     */
+    @SuppressWarnings("unchecked")
+    public RelaxedHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Retrieve the smallest published shard top.
+     * @return the top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    @Override
+    public Optional<T> peek() {
+        T best = null;
+        for(Shard<T> shard : shards) {
+            T top = shard.top;
+            if(top != null
+                    && (best == null || comparator.compare(top, best) < 0)) {
+                best = top;
+            }
+        }
+        return Optional.ofNullable(best);
+    }
+
+    /**
+     * Retrieve and extract one of the top-most items of the heap.
+     * @return a top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    @Override
+    public Optional<T> pop() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Shard<T> shard = smaller(shards[random.nextInt(shards.length)],
+                    shards[random.nextInt(shards.length)]);
+            if(shard == null) {
+                break;
+            }
+            if(shard.lock.tryLock()) {
+                try {
+                    Optional<T> result = shard.heap.pop();
+                    shard.publish();
+                    if(result.isPresent()) {
+                        return result;
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        }
+
+        // contended or mostly empty: wait on the non empty shards in turn
+        int start = random.nextInt(shards.length);
+        for(int i = 0; i < shards.length; i++) {
+            Shard<T> shard = shards[(start + i) % shards.length];
+            if(shard.size == 0) {
+                continue;
+            }
+            shard.lock.lock();
+            try {
+                Optional<T> result = shard.heap.pop();
+                shard.publish();
+                if(result.isPresent()) {
+                    return result;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Retrieve and extract several top-most items of the heap, one relaxed
+     * pop at a time.
+     * @param count the amount of items to "pop" from the top of the heap
+     * @return a heap with the items popped.
+     */
+    @Override
+    public BinaryHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        BinaryHeap<T> head = new BinaryHeap<>(comparator);
+        for(int i = 0; i < count; i++) {
+            Optional<T> item = pop();
+            if(!item.isPresent()) {
+                break;
+            }
+            head.add(item.get());
+        }
+        return head;
+    }
+
+    /**
+     * Replaces one of the top-most items; the new item is added to a random
+     * shard.
+     * @param value a supplier for the new value of the top most item; the value
+     * is not retrieved if the heap is empty.
+     * @return the old value of the top most item is the heap wasn't empty
+     */
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        Optional<T> top = pop();
+        if(top.isPresent()) {
+            add(value.get());
+        }
+        return top;
+    }
+
+    @Override
+    public void add(T value) {
+        Objects.requireNonNull(value);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Shard<T> shard = shards[random.nextInt(shards.length)];
+        for(int attempt = 1; !shard.lock.tryLock(); attempt++) {
+            if(attempt == MAX_ATTEMPTS) {
+                shard.lock.lock();
+                break;
+            }
+            shard = shards[random.nextInt(shards.length)];
+        }
+        try {
+            shard.heap.add(value);
+            shard.publish();
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds several items, each one to a random shard.
+     * @param values the items to add
+     */
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        values.forEach(Objects::requireNonNull);
+        values.forEach(this::add);
+    }
+
+    /**
+     * Returns the sum of the published shard sizes; only exact when the heap
+     * is not being modified.
+     * @return the items count
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for(Shard<T> shard : shards) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for(Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.heap.clear();
+                shard.publish();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks the shard with the smaller published top.
+     * @return the chosen shard; null if both are empty
+     */
+    private Shard<T> smaller(Shard<T> a, Shard<T> b) {
+        T top_a = a.top;
+        T top_b = b.top;
+        if(top_a == null) {
+            return top_b == null ? null : b;
+        }
+        return top_b == null || comparator.compare(top_a, top_b) <= 0 ? a : b;
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import static mx.avc.sandbox.BaseBinaryHeap.heapify;
+import static mx.avc.sandbox.BaseBinaryHeap.siftDown;
+
+/**
+ * Implements a min-heap for many producers and a single consumer.
+ * <p>
+ * Every producer thread is assigned one of several shards, each one a
+ * {@link BinaryHeap} with its own lock, so producers never contend with each
+ * other on the insert path. The consumer keeps the shard tops in a small
+ * index heap and merges the shards in exact global order: after each pop only
+ * the shard that was popped is re-sifted in the index, and shards whose top
+ * was lowered by a producer are flagged and re-read lazily.
+ * <p>
+ * {@link #add(Object)} and {@link #addAll(Collection)} may be called from
+ * any thread; every other operation must be confined to one consumer thread
+ * at a time. Items cannot be null.
+ * @author alexv
+ */
+public class ShardedHeap<T> implements Heap<T> {
+
+    private static final class Shard<T> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final BinaryHeap<T> heap;
+
+        /**
+         * The heap size, published for lock free reads.
+         */
+        private volatile int size;
+
+        /**
+         * Set by producers when they lower the shard top.
+         */
+        private volatile boolean dirty;
+
+        /**
+         * The shard top as last seen by the consumer; null if empty.
+         */
+        private T top;
+
+        private Shard(Comparator<T> c) {
+            heap = new BinaryHeap<>(c);
+        }
+
+        /**
+         * Re-reads the top; the caller must hold the lock.
+         */
+        private void refresh() {
+            size = heap.size();
+            top = size == 0 ? null : heap.array()[0];
+        }
+    }
+
+    private final Comparator<T> comparator;
+
+    private final Shard<T>[] shards;
+
+    /**
+     * Shard indexes in heap order of their tops, empty shards last.
+     */
+    private final Integer[] index;
+
+    private final Comparator<Integer> shardOrder;
+
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    private final ThreadLocal<Shard<T>> producerShard;
+
+    /**
+     * Set by producers when any shard is flagged as dirty.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     * @param shardCount the number of shards
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedHeap(Comparator<T> c, int shardCount) {
+        if(shardCount <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        comparator = c;
+        shards = (Shard<T>[])new Shard<?>[shardCount];
+        index = new Integer[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>(c);
+            index[i] = i;
+        }
+
+        shardOrder = (a, b) -> {
+            T top_a = shards[a].top;
+            T top_b = shards[b].top;
+            if(top_a == null) {
+                return top_b == null ? 0 : 1;
+            }
+            return top_b == null ? -1 : comparator.compare(top_a, top_b);
+        };
+
+        producerShard = ThreadLocal.withInitial(() ->
+                shards[nextShard.getAndIncrement() % shards.length]);
+    }
+
+    /**
+     * Constructs an empty heap with one shard per available processor.
+     * @param c the comparator used to sort the heap items.
+     */
+    public ShardedHeap(Comparator<T> c) {
+        this(c, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an empty heap with one shard per available processor.
+     */
+    @SuppressWarnings("unchecked")
+    public ShardedHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    @Override
+    public Optional<T> peek() {
+        refresh();
+        return Optional.ofNullable(shards[index[0]].top);
+    }
+
+    @Override
+    public Optional<T> pop() {
+        refresh();
+        Shard<T> shard = shards[index[0]];
+        if(shard.top == null) {
+            return Optional.empty();
+        }
+
+        T top;
+        shard.lock.lock();
+        try {
+            top = shard.heap.pop().get();
+            shard.refresh();
+        } finally {
+            shard.lock.unlock();
+        }
+
+        siftDown(index, shardOrder, index.length, 0);
+        return Optional.of(top);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public BinaryHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        T[] head = (T[])new Object[Math.min(count, size())];
+        int head_size = 0;
+        while(head_size < head.length) {
+            Optional<T> top = pop();
+            if(!top.isPresent()) {
+                break;
+            }
+            head[head_size++] = top.get();
+        }
+
+        return new BinaryHeap<>(head, head_size, comparator);
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        refresh();
+        Shard<T> shard = shards[index[0]];
+        if(shard.top == null) {
+            return Optional.empty();
+        }
+
+        Optional<T> top;
+        shard.lock.lock();
+        try {
+            top = shard.heap.update(value);
+            shard.refresh();
+        } finally {
+            shard.lock.unlock();
+        }
+
+        siftDown(index, shardOrder, index.length, 0);
+        return top;
+    }
+
+    /**
+     * Adds an item to the shard of the calling thread.
+     * @param value the item to add
+     */
+    @Override
+    public void add(T value) {
+        Objects.requireNonNull(value);
+        Shard<T> shard = producerShard.get();
+
+        shard.lock.lock();
+        try {
+            shard.heap.add(value);
+            shard.size = shard.heap.size();
+            if(shard.heap.array()[0] == value) {
+                shard.dirty = true;
+                dirty = true;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds items to the shard of the calling thread.
+     * @param values the items to add
+     */
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        Objects.requireNonNull(values);
+        Shard<T> shard = producerShard.get();
+
+        shard.lock.lock();
+        try {
+            shard.heap.addAll(values);
+            shard.size = shard.heap.size();
+        } finally {
+            shard.lock.unlock();
+        }
+
+        shard.dirty = true;
+        dirty = true;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for(Shard<T> shard : shards) {
+            size += shard.size;
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for(Shard<T> shard : shards) {
+            shard.lock.lock();
+            try {
+                shard.heap.clear();
+                shard.refresh();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Re-reads the tops of the shards flagged by producers, and restores the
+     * index heap if any changed.
+     */
+    private void refresh() {
+        if(!dirty) {
+            return;
+        }
+
+        dirty = false;
+        for(Shard<T> shard : shards) {
+            if(shard.dirty) {
+                shard.lock.lock();
+                try {
+                    shard.dirty = false;
+                    shard.refresh();
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+        }
+
+        heapify(index, shardOrder, index.length);
+    }
+}
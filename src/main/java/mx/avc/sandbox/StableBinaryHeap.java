@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Supplier;
+import static mx.avc.sandbox.BaseStableBinaryHeap.heapify;
+import static mx.avc.sandbox.BaseStableBinaryHeap.replaceTop;
+import static mx.avc.sandbox.BaseStableBinaryHeap.siftUp;
+import static mx.avc.sandbox.BaseStableBinaryHeap.splitHeap;
+
+/**
+ * Implements a stable min-heap: equal items leave in the order they were
+ * added.
+ * <p>
+ * Each item gets an insertion sequence, kept in a {@code long[]} parallel to
+ * the items instead of a wrapper object, so the heap allocates nothing per
+ * item. The sequences are only compared when the comparator finds a tie (see
+ * {@link BaseStableBinaryHeap}).
+ * @author alexv
+ */
+public class StableBinaryHeap<T> implements Heap<T> {
+
+    private static final int INITIAL_CAPACITY = 15;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final Object[] DEFAULT_HEAP = new Object[] {};
+
+    private static final long[] DEFAULT_SEQUENCES = new long[] {};
+
+    /**
+     * The heap implemented as an array.
+     */
+    private T[] heap;
+
+    /**
+     * The insertion sequence of each item in the heap.
+     */
+    private long[] sequences;
+
+    /**
+     * The used space within the heap.
+     */
+    private int size;
+
+    /**
+     * The sequence of the next item added.
+     */
+    private long nextSequence;
+
+    /**
+     * The {@link java.util.Comparator} used to order the items in the heap.
+     */
+    private final Comparator<T> comparator;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     */
+    @SuppressWarnings("unchecked")
+    public StableBinaryHeap(Comparator<T> c) {
+        this((T[])DEFAULT_HEAP, DEFAULT_SEQUENCES, 0, 0, c);
+    }
+
+    /**
+     * Raw constructs a heap.
+     */
+    private StableBinaryHeap(T[] h, long[] q, int s, long n, Comparator<T> c) {
+        heap = h;
+        sequences = q;
+        size = s;
+        nextSequence = n;
+        comparator = c;
+    }
+
+    /**
+     * Constructs an empty heap.
+     */
+    @SuppressWarnings("unchecked")
+    public StableBinaryHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Constructs a pre-populated heap; equal items keep the iteration order
+     * of the collection.
+     * @param c the comparator used to sort the heap items.
+     * @param initial the items used to populate the heap.
+     */
+    public StableBinaryHeap(Comparator<T> c, Collection<? extends T> initial) {
+        this(c);
+        addAll(initial);
+    }
+
+    /**
+     * Constructs a pre-populated heap; equal items keep the iteration order
+     * of the collection.
+     * @param initial the items used to populate the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public StableBinaryHeap(Collection<? extends T> initial) {
+        this((Comparator<T>)naturalOrder(), initial);
+    }
+
+    /**
+     * Retrieve the top most item of the heap without removing it.
+     * @return the top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    @Override
+    public Optional<T> peek() {
+        return size == 0 ? Optional.empty() : Optional.of(heap[0]);
+    }
+
+    /**
+     * Retrieve and extract the top most item of the heap; among equal items,
+     * the one added first.
+     * @return the top-most item in the heap; {@link java.util.Optional#empty()}
+     *          if the heap is empty
+     */
+    @Override
+    public Optional<T> pop() {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        T top;
+        if(size == 1) {
+            top = heap[0];
+            heap[0] = null;
+            size = 0;
+        } else {
+            T bottom = heap[--size];
+            heap[size] = null;
+            top = replaceTop(heap, sequences, comparator, size, bottom,
+                    sequences[size]);
+        }
+        return Optional.of(top);
+    }
+
+    /**
+     * Retrieve and extract the top most items of the heap; the items keep
+     * their sequences, so ties are still broken by insertion order.
+     * @param count the amount of items to "pop" from the top of the heap
+     * @return a heap with the items popped.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public StableBinaryHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        if(count == 0 || size == 0) {
+            return new StableBinaryHeap<>((T[])DEFAULT_HEAP, DEFAULT_SEQUENCES,
+                    0, nextSequence, comparator);
+        }
+
+        if(count >= size) {
+            StableBinaryHeap<T> head = new StableBinaryHeap<>(heap, sequences,
+                    size, nextSequence, comparator);
+            heap = (T[])DEFAULT_HEAP;
+            sequences = DEFAULT_SEQUENCES;
+            size = 0;
+            return head;
+        }
+
+        if(count == 1) {
+            long sequence = sequences[0];
+            T top = pop().get();
+            return new StableBinaryHeap<>((T[])new Object[] { top },
+                    new long[] { sequence }, 1, nextSequence, comparator);
+        }
+
+        T[] head = (T[])new Object[count];
+        long[] head_sequences = new long[count];
+        splitHeap(heap, sequences, comparator, size, head, head_sequences,
+                count);
+        size = size - count;
+        return new StableBinaryHeap<>(head, head_sequences, count,
+                nextSequence, comparator);
+    }
+
+    /**
+     * Updates the top-most element's value; the new value counts as added
+     * last.
+     * @param value a supplier for the new value of the top most item; the value
+     * is not retrieved if the heap is empty.
+     * @return the old value of the top most item is the heap wasn't empty
+     */
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(replaceTop(heap, sequences, comparator, size,
+                value.get(), nextSequence++));
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param value the item to add
+     */
+    @Override
+    public void add(T value) {
+        ensureExtraCapacity(1);
+        int index = size++;
+        heap[index] = value;
+        sequences[index] = nextSequence++;
+        siftUp(heap, sequences, comparator, size, index);
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param values the items to add, in insertion order
+     */
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        Objects.requireNonNull(values);
+        Object[] v = values.toArray();
+        ensureExtraCapacity(v.length);
+        System.arraycopy(v, 0, heap, size, v.length);
+        for(int i = 0; i < v.length; i++) {
+            sequences[size++] = nextSequence++;
+        }
+        heapify(heap, sequences, comparator, size);
+    }
+
+    /**
+     * Returns the number of items in the heap
+     * @return the items count
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the items from the heap
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        if(size > 0) {
+            Arrays.fill(heap, 0, size, null);
+            heap = (T[])DEFAULT_HEAP;
+            sequences = DEFAULT_SEQUENCES;
+            size = 0;
+        }
+    }
+
+    private void ensureExtraCapacity(int excess) {
+        int newCapacity = size + excess;
+        if(newCapacity > heap.length) {
+            newCapacity = Math.min(MAX_CAPACITY,
+                    Math.max(INITIAL_CAPACITY, newCapacity + (size >> 1)));
+            heap = Arrays.copyOf(heap, newCapacity);
+            sequences = Arrays.copyOf(sequences, newCapacity);
+        }
+    }
+}
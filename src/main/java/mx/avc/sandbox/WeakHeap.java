@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Implements a weak min-heap.
+ * <p>
+ * A weak heap only requires every item to be less or equal than the items in
+ * its right subtree, and keeps one reverse bit per node telling which of its
+ * two children is the right one; flipping the bit swaps the subtrees at no
+ * cost. It is built with exactly {@code n - 1} comparisons, and popping an
+ * item takes about {@code log n} comparisons against the
+ * {@code 2 log n} of a {@link BinaryHeap}, which pays off when comparing
+ * the items is expensive.
+ * @author alexv
+ */
+public class WeakHeap<T> implements Heap<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 64;
+
+    private static final Object[] DEFAULT_HEAP = new Object[] {};
+
+    private static final long[] DEFAULT_REVERSE = new long[] {};
+
+    /**
+     * The heap items.
+     */
+    private T[] heap;
+
+    /**
+     * The reverse bits, one per item.
+     */
+    private long[] reverse;
+
+    /**
+     * The used space within the heap.
+     */
+    private int size;
+
+    /**
+     * The {@link java.util.Comparator} used to order the items in the heap.
+     */
+    private final Comparator<T> comparator;
+
+    /**
+     * Constructs an empty heap.
+     * @param c the comparator used to sort the heap items.
+     */
+    @SuppressWarnings("unchecked")
+    public WeakHeap(Comparator<T> c) {
+        heap = (T[])DEFAULT_HEAP;
+        reverse = DEFAULT_REVERSE;
+        size = 0;
+        comparator = c;
+    }
+
+    /**
+     * Constructs an empty heap.
+     */
+    @SuppressWarnings("unchecked")
+    public WeakHeap() {
+        this((Comparator<T>)naturalOrder());
+    }
+
+    /**
+     * Constructs a pre-populated heap.
+     * @param c the comparator used to sort the heap items.
+     * @param initial the items used to populate the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public WeakHeap(Comparator<T> c, Collection<? extends T> initial) {
+        heap = (T[])initial.toArray();
+        reverse = new long[bitsLength(heap.length)];
+        size = heap.length;
+        comparator = c;
+        build();
+    }
+
+    /**
+     * Constructs a pre-populated heap.
+     * @param initial the items used to populate the heap.
+     */
+    @SuppressWarnings("unchecked")
+    public WeakHeap(Collection<? extends T> initial) {
+        this((Comparator<T>)naturalOrder(), initial);
+    }
+
+    /**
+     * Raw constructs a heap.
+     */
+    private WeakHeap(T[] h, int s, Comparator<T> c) {
+        heap = h;
+        reverse = new long[bitsLength(h.length)];
+        size = s;
+        comparator = c;
+    }
+
+    @Override
+    public Optional<T> peek() {
+        return size == 0 ? Optional.empty() : Optional.of(heap[0]);
+    }
+
+    @Override
+    public Optional<T> pop() {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        T top = heap[0];
+        heap[0] = heap[--size];
+        heap[size] = null;
+        siftDown();
+        return Optional.of(top);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public WeakHeap<T> pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        count = Math.min(count, size);
+        T[] head = (T[])new Object[count];
+        for(int index = 0; index < count; index++) {
+            head[index] = heap[0];
+            heap[0] = heap[--size];
+            heap[size] = null;
+            siftDown();
+        }
+
+        // a sorted array with all the bits clear is a valid weak heap
+        return new WeakHeap<>(head, count, comparator);
+    }
+
+    @Override
+    public Optional<T> update(Supplier<T> value) {
+        if(size == 0) {
+            return Optional.empty();
+        }
+
+        T top = heap[0];
+        heap[0] = value.get();
+        siftDown();
+        return Optional.of(top);
+    }
+
+    @Override
+    public void add(T value) {
+        ensureCapacity(size + 1);
+        int index = size++;
+        heap[index] = value;
+        clearReverse(index);
+        if((index & 1) == 0) {
+            // make the new item a left child, so it has no ancestor to respect
+            // but the distinguished one
+            clearReverse(index >> 1);
+        }
+        siftUp(index);
+    }
+
+    /**
+     * Adds items to the heap; if they outnumber the current items the heap is
+     * rebuilt with {@code n - 1} comparisons.
+     * @param values the items to add
+     */
+    @Override
+    public void addAll(Collection<? extends T> values) {
+        @SuppressWarnings("unchecked")
+        T[] v = (T[])values.toArray();
+        if(v.length <= size) {
+            for(T value : v) {
+                add(value);
+            }
+            return;
+        }
+
+        ensureCapacity(size + v.length);
+        System.arraycopy(v, 0, heap, size, v.length);
+        size = size + v.length;
+        Arrays.fill(reverse, 0L);
+        build();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        heap = (T[])DEFAULT_HEAP;
+        reverse = DEFAULT_REVERSE;
+        size = 0;
+    }
+
+    private boolean isReversed(int index) {
+        return (reverse[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void flipReverse(int index) {
+        reverse[index >>> 6] ^= 1L << index;
+    }
+
+    private void clearReverse(int index) {
+        reverse[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Finds the distinguished ancestor of an item: the parent of the first
+     * ancestor (or the item itself) which is a right child.
+     */
+    private int ancestor(int index) {
+        while((index & 1) == (isReversed(index >> 1) ? 1 : 0)) {
+            index >>= 1;
+        }
+        return index >> 1;
+    }
+
+    /**
+     * Restores the weak heap order between an item and its distinguished
+     * ancestor with a single comparison.
+     * @return true if the order already held
+     */
+    private boolean join(int ancestor, int index) {
+        T item = heap[index];
+        T parent = heap[ancestor];
+        if(comparator.compare(item, parent) < 0) {
+            heap[ancestor] = item;
+            heap[index] = parent;
+            flipReverse(index);
+            return false;
+        }
+        return true;
+    }
+
+    private void build() {
+        for(int index = size - 1; index > 0; index--) {
+            join(ancestor(index), index);
+        }
+    }
+
+    private void siftUp(int index) {
+        while(index > 0) {
+            int ancestor = ancestor(index);
+            if(join(ancestor, index)) {
+                break;
+            }
+            index = ancestor;
+        }
+    }
+
+    /**
+     * Restores the heap order of the root by walking down the leftmost path
+     * of its right subtree and joining every node on it with the root.
+     */
+    private void siftDown() {
+        if(size < 2) {
+            return;
+        }
+
+        int index = 1;
+        int child;
+        while((child = 2 * index + (isReversed(index) ? 1 : 0)) < size) {
+            index = child;
+        }
+        while(index > 0) {
+            join(0, index);
+            index >>= 1;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if(minCapacity > heap.length) {
+            int newCapacity = Math.max(INITIAL_CAPACITY,
+                    heap.length + (heap.length >> 1));
+            if(newCapacity < minCapacity || newCapacity > MAX_CAPACITY) {
+                newCapacity = minCapacity;
+            }
+            heap = Arrays.copyOf(heap, newCapacity);
+        }
+        int bits = bitsLength(heap.length);
+        if(bits > reverse.length) {
+            reverse = Arrays.copyOf(reverse, bits);
+        }
+    }
+
+    private static int bitsLength(int capacity) {
+        return (capacity + 63) >>> 6;
+    }
+}
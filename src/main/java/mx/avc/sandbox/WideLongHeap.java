@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+
+/**
+ * Implements a d-ary min-heap of primitive long keys.
+ * <p>
+ * The children of a node are stored contiguously, so with the default arity
+ * of 8 a sift-down step finds the smallest child with a single linear scan
+ * over 64 bytes (one cache line) instead of walking three binary levels.
+ * The arity must be a power of two.
+ * @author alexv
+ */
+public class WideLongHeap {
+
+    private static final int DEFAULT_ARITY = 8;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final long[] DEFAULT_HEAP = new long[] {};
+
+    /**
+     * The heap implemented as an array.
+     */
+    private long[] heap;
+
+    /**
+     * The used space within the heap.
+     */
+    private int size;
+
+    /**
+     * The base 2 logarithm of the arity.
+     */
+    private final int shift;
+
+    /**
+     * Constructs an empty heap.
+     * @param arity the amount of children per node; a power of two
+     */
+    public WideLongHeap(int arity) {
+        if(arity < 2 || Integer.bitCount(arity) != 1) {
+            throw new IllegalArgumentException("arity: " + arity);
+        }
+
+        heap = DEFAULT_HEAP;
+        size = 0;
+        shift = Integer.numberOfTrailingZeros(arity);
+    }
+
+    /**
+     * Constructs an empty 8-ary heap.
+     */
+    public WideLongHeap() {
+        this(DEFAULT_ARITY);
+    }
+
+    /**
+     * Constructs a pre-populated heap.
+     * @param arity the amount of children per node; a power of two
+     * @param initial the items used to populate the heap.
+     */
+    public WideLongHeap(int arity, long... initial) {
+        this(arity);
+        heap = initial.clone();
+        size = heap.length;
+        for(int index = (size - 2) >> shift; index >= 0; index--) {
+            siftDown(index);
+        }
+    }
+
+    /**
+     * Raw constructs a heap.
+     */
+    private WideLongHeap(int shift, long[] h, int s) {
+        this.shift = shift;
+        this.heap = h;
+        this.size = s;
+    }
+
+    /**
+     * Returns the amount of children per node.
+     * @return the heap arity
+     */
+    public int arity() {
+        return 1 << shift;
+    }
+
+    /**
+     * Retrieve the top most item of the heap without removing it.
+     * @return the top-most item in the heap;
+     *          {@link java.util.OptionalLong#empty()} if the heap is empty
+     */
+    public OptionalLong peek() {
+        return size == 0 ? OptionalLong.empty() : OptionalLong.of(heap[0]);
+    }
+
+    /**
+     * Retrieve and extract the top most item of the heap.
+     * @return the top-most item in the heap;
+     *          {@link java.util.OptionalLong#empty()} if the heap is empty
+     */
+    public OptionalLong pop() {
+        if(size == 0) {
+            return OptionalLong.empty();
+        }
+
+        long top = heap[0];
+        if(--size > 0) {
+            heap[0] = heap[size];
+            siftDown(0);
+        }
+        return OptionalLong.of(top);
+    }
+
+    /**
+     * Retrieve and extract the top most items of the heap.
+     * @param count the amount of items to "pop" from the top of the heap
+     * @return a heap of the same arity with all the top-most items requested.
+     */
+    public WideLongHeap pop(int count) {
+        if(count < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        count = Math.min(count, size);
+        long[] head = new long[count];
+        for(int index = 0; index < count; index++) {
+            head[index] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+        }
+
+        // a sorted array is a valid heap
+        return new WideLongHeap(shift, head, count);
+    }
+
+    /**
+     * Updates the top-most element's value.
+     * @param value the new value of the top most item
+     * @return the old value of the top most item is the heap wasn't empty
+     */
+    public OptionalLong update(long value) {
+        if(size == 0) {
+            return OptionalLong.empty();
+        }
+
+        long top = heap[0];
+        heap[0] = value;
+        if(value > top) {
+            siftDown(0);
+        }
+        return OptionalLong.of(top);
+    }
+
+    /**
+     * Adds an item to the heap.
+     * @param value the item to add
+     */
+    public void add(long value) {
+        if(size == heap.length) {
+            grow(size + 1);
+        }
+
+        int index = size++;
+        while(index > 0) {
+            int parent = (index - 1) >> shift;
+            long parent_item = heap[parent];
+            if(parent_item <= value) {
+                break;
+            }
+            heap[index] = parent_item;
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * Adds items to the heap.
+     * @param values the items to add
+     */
+    public void addAll(long... values) {
+        if(size + values.length > heap.length) {
+            grow(size + values.length);
+        }
+
+        for(long value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Indicates if the heap is empty.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of items in the heap
+     * @return the items count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the items from the heap
+     */
+    public void clear() {
+        heap = DEFAULT_HEAP;
+        size = 0;
+    }
+
+    /**
+     * Trims array storage to fit only current items.
+     */
+    public void trimToSize() {
+        if(size < heap.length) {
+            heap = Arrays.copyOf(heap, size);
+        }
+    }
+
+    private void siftDown(int index) {
+        long item = heap[index];
+        int limit = size;
+
+        while(true) {
+            int first = (index << shift) + 1;
+            if(first >= limit || first <= 0) {
+                break;
+            }
+
+            // branch-light scan for the smallest of the contiguous children
+            int last = Math.min(first + (1 << shift), limit);
+            int smallest = first;
+            long smallest_item = heap[first];
+            for(int child = first + 1; child < last; child++) {
+                long child_item = heap[child];
+                if(child_item < smallest_item) {
+                    smallest = child;
+                    smallest_item = child_item;
+                }
+            }
+
+            if(smallest_item >= item) {
+                break;
+            }
+
+            heap[index] = smallest_item;
+            index = smallest;
+        }
+
+        heap[index] = item;
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(INITIAL_CAPACITY,
+                heap.length + (heap.length >> 1));
+        if(newCapacity < minCapacity || newCapacity > MAX_CAPACITY) {
+            newCapacity = minCapacity;
+        }
+        heap = Arrays.copyOf(heap, newCapacity);
+    }
+}
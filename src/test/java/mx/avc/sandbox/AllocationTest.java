@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import java.util.Random;
+import static mx.avc.sandbox.BaseBinaryHeap.heapify;
+import static mx.avc.sandbox.BaseBinaryHeap.replaceTop;
+import static mx.avc.sandbox.BaseBinaryHeap.siftDown;
+import static mx.avc.sandbox.BaseBinaryHeap.siftUp;
+import static mx.avc.sandbox.TestUtils.allocatedBytes;
+import static mx.avc.sandbox.TestUtils.isAllocationAccountingSupported;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Enforces allocation budgets on the steady-state heap operations.
+ * <p>
+ * Each loop runs until compiled, then the bytes allocated by the thread are
+ * measured over several rounds; the best round must stay within the budget.
+ * The budgets are per operation, so an extra {@code Optional} (16 bytes) or
+ * array copy shows up as a failure. The sift kernels allocate nothing, so
+ * their budget is zero. {@link BinaryHeap#pop()} and
+ * {@link BinaryHeap#update} are budgeted for the {@code Optional} they
+ * return, and update also for the capturing supplier: escape analysis in C2
+ * may remove those, but not in C1, the interpreter, or under coverage
+ * instrumentation.
+ * @author alexv
+ */
+public class AllocationTest {
+    private static final Logger LOGGER = getLogger(AllocationTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER =
+            Comparator.naturalOrder();
+
+    private static final int HEAP_SIZE = 1 << 12;
+
+    private static final int OPERATIONS = 1 << 16;
+
+    private static final int WARMUP_ROUNDS = 20;
+
+    private static final int ROUNDS = 10;
+
+    /**
+     * Allowance for the measurement itself, amortized over the operations.
+     */
+    private static final double NOISE = 0.5;
+
+    /**
+     * An object with a single reference field, like an {@code Optional} or
+     * a lambda capturing one value, with compressed references.
+     */
+    private static final int BOXED_REFERENCE = 16;
+
+    private static final Integer[] VALUES = new Random(42).ints(OPERATIONS)
+            .boxed().toArray(Integer[]::new);
+
+    private interface Loop {
+        void run();
+    }
+
+    private static double bytesPerOperation(String name, Loop loop) {
+        for(int round = 0; round < WARMUP_ROUNDS; round++) {
+            loop.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        for(int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            loop.run();
+            best = Math.min(best, allocatedBytes() - before);
+        }
+
+        double bytes = (double)best / OPERATIONS;
+        LOGGER.info("{}: {} bytes/op", name, String.format("%.3f", bytes));
+        return bytes;
+    }
+
+    private static void assertBudget(String name, double budget, Loop loop) {
+        double bytes = bytesPerOperation(name, loop);
+        assertTrue(name + " allocated " + bytes + " bytes/op",
+                bytes <= budget + NOISE);
+    }
+
+    private Integer[] heap;
+
+    @Before
+    public void setup() {
+        assumeTrue(isAllocationAccountingSupported());
+        heap = new Integer[HEAP_SIZE];
+        System.arraycopy(VALUES, 0, heap, 0, HEAP_SIZE);
+        heapify(heap, NATURAL_ORDER, HEAP_SIZE);
+    }
+
+    @Test
+    public void testReplaceTop() {
+        LOGGER.info("Testing replaceTop() - allocation");
+        assertBudget("replaceTop", 0, () -> {
+            for(Integer value : VALUES) {
+                replaceTop(heap, NATURAL_ORDER, HEAP_SIZE, value);
+            }
+        });
+    }
+
+    @Test
+    public void testSiftDown() {
+        LOGGER.info("Testing siftDown() - allocation");
+        assertBudget("siftDown", 0, () -> {
+            for(Integer value : VALUES) {
+                heap[0] = value;
+                siftDown(heap, NATURAL_ORDER, HEAP_SIZE, 0);
+            }
+        });
+    }
+
+    @Test
+    public void testSiftUp() {
+        LOGGER.info("Testing siftUp() - allocation");
+        int last = HEAP_SIZE - 1;
+        assertBudget("siftUp", 0, () -> {
+            for(Integer value : VALUES) {
+                // move the bottom to the top, then sift a new bottom up
+                replaceTop(heap, NATURAL_ORDER, last, heap[last]);
+                heap[last] = value;
+                siftUp(heap, NATURAL_ORDER, HEAP_SIZE, last);
+            }
+        });
+    }
+
+    @Test
+    public void testAddPop() {
+        LOGGER.info("Testing BinaryHeap.add()/pop() - allocation");
+        BinaryHeap<Integer> binary_heap = new BinaryHeap<>(NATURAL_ORDER,
+                asList(heap));
+        binary_heap.add(0);
+        binary_heap.pop();
+
+        assertBudget("add/pop", BOXED_REFERENCE, () -> {
+            for(Integer value : VALUES) {
+                binary_heap.add(value);
+                binary_heap.pop();
+            }
+        });
+    }
+
+    @Test
+    public void testUpdate() {
+        LOGGER.info("Testing BinaryHeap.update() - allocation");
+        BinaryHeap<Integer> binary_heap = new BinaryHeap<>(NATURAL_ORDER,
+                asList(heap));
+
+        assertBudget("update", 2 * BOXED_REFERENCE, () -> {
+            for(Integer value : VALUES) {
+                binary_heap.update(() -> value);
+            }
+        });
+    }
+}
@@ -9,10 +9,13 @@
 package mx.avc.sandbox;
 
 import static java.lang.System.arraycopy;
+import static java.util.Arrays.sort;
 import java.util.Comparator;
 import static java.util.Comparator.naturalOrder;
+import java.util.concurrent.atomic.AtomicInteger;
 import static mx.avc.sandbox.BaseBinaryHeap.heapify;
 import static mx.avc.sandbox.BaseBinaryHeap.replaceTop;
+import static mx.avc.sandbox.BaseBinaryHeap.reverse;
 import static mx.avc.sandbox.BaseBinaryHeap.reverseHeapify;
 import static mx.avc.sandbox.BaseBinaryHeap.splitHeap;
 import static org.junit.Assert.assertEquals;
@@ -93,6 +96,67 @@ public class BaseBinaryHeapTest {
         }
    }
 
+    @Test
+    public void testHeapifyPresorted() {
+        LOGGER.info("Testing heapify() - presorted input");
+
+        final int length = TEST_VALUES.length;
+        AtomicInteger comparisons = new AtomicInteger();
+        Comparator<Integer> counting_order = (a, b) -> {
+            comparisons.incrementAndGet();
+            return a.compareTo(b);
+        };
+
+        Integer[] sorted = TEST_VALUES.clone();
+        sort(sorted);
+        Integer[] test_values = sorted.clone();
+        heapify(test_values, counting_order, length);
+        assertEquals(length - 1, comparisons.get());
+        assertArrayEquals(sorted, 0, test_values, 0, length);
+
+        comparisons.set(0);
+        test_values = sorted.clone();
+        reverse(test_values, 0, length);
+        heapify(test_values, counting_order, length);
+        assertEquals(length - 1, comparisons.get());
+        assertArrayEquals(sorted, 0, test_values, 0, length);
+
+        for(int split = 1; split < length; split++) {
+            test_values = sorted.clone();
+            reverse(test_values, split, length);
+            heapify(test_values, counting_order, length);
+            assertHeapConsistency(test_values, counting_order, length);
+
+            test_values = sorted.clone();
+            reverse(test_values, 0, split);
+            heapify(test_values, counting_order, length);
+            assertHeapConsistency(test_values, counting_order, length);
+        }
+    }
+
+    @Test
+    public void testHeapifySawtooth() {
+        LOGGER.info("Testing heapify() - sawtooth input");
+
+        Comparator<Integer> natural_order = naturalOrder();
+        final int length = TEST_VALUES.length;
+
+        for(int tooth = 1; tooth <= length; tooth++) {
+            Integer[] test_values = new Integer[length];
+            for(int i = 0; i < length; i++) {
+                test_values[i] = i % tooth;
+            }
+            heapify(test_values, natural_order, length);
+            assertHeapConsistency(test_values, natural_order, length);
+
+            for(int i = 0; i < length; i++) {
+                test_values[i] = tooth - i % tooth;
+            }
+            heapify(test_values, natural_order, length);
+            assertHeapConsistency(test_values, natural_order, length);
+        }
+    }
+
     @Test
     public void testHeapifyPartial() {
         LOGGER.info("Testing heapify() - partial");
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Compares the page blocked layout of {@link BlockedLongHeap} against the
+ * implicit binary layout of a binary {@link WideLongHeap}, with a working set
+ * (64 MiB) well beyond the L3 cache.
+ * @author alexv
+ */
+public class BenchmarkBlockedLongHeapTest {
+
+    static final int TEST_VALUE_SIZE = 1 << 23;
+    static final int POP_SIZE = 1 << 20;
+    static final long[] TEST_VALUES;
+
+    static {
+        SecureRandom random = new SecureRandom("TEST_SEED".getBytes());
+
+        TEST_VALUES = new long[TEST_VALUE_SIZE];
+        Arrays.setAll(TEST_VALUES, i -> random.nextLong());
+    }
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void testBinaryLayout() {
+        WideLongHeap heap = new WideLongHeap(2);
+        heap.addAll(TEST_VALUES);
+        for(int i = 0; i < POP_SIZE; i++) {
+            heap.pop();
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void testCacheLineLayout() {
+        BlockedLongHeap heap = new BlockedLongHeap(8);
+        heap.addAll(TEST_VALUES);
+        for(int i = 0; i < POP_SIZE; i++) {
+            heap.pop();
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 3, warmupRounds = 1)
+    public void testPageLayout() {
+        BlockedLongHeap heap = new BlockedLongHeap();
+        heap.addAll(TEST_VALUES);
+        for(int i = 0; i < POP_SIZE; i++) {
+            heap.pop();
+        }
+    }
+}
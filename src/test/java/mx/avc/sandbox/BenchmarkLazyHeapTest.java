@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.security.SecureRandom;
+import java.util.List;
+import static java.util.stream.Collectors.toList;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Compares {@link LazyHeap} against {@link BinaryHeap} when only the first
+ * page of the items is popped before the heap is discarded.
+ * @author alexv
+ */
+public class BenchmarkLazyHeapTest {
+
+    static final int TEST_VALUE_SIZE = 1 << 20;
+    static final int PAGE_SIZE = 100;
+    static final List<Integer> TEST_VALUES;
+
+    static {
+        SecureRandom random = new SecureRandom("TEST_SEED".getBytes());
+
+        TEST_VALUES = random.ints(TEST_VALUE_SIZE).boxed().collect(toList());
+    }
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testBinaryHeapFirstPage() {
+        new BinaryHeap<>(TEST_VALUES).pop(PAGE_SIZE);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testLazyHeapFirstPage() {
+        new LazyHeap<>(TEST_VALUES).pop(PAGE_SIZE);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import static com.carrotsearch.junitbenchmarks.BenchmarkOptions.CONCURRENCY_AVAILABLE_CORES;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Compares the add/pop throughput of {@link RelaxedHeap} against a strict
+ * {@link ConcurrentHeap}, with one thread and with one thread per core, and
+ * reports the rank error of the relaxed pops.
+ * @author alexv
+ */
+public class BenchmarkRelaxedHeapTest {
+    private static final Logger LOGGER =
+            getLogger(BenchmarkRelaxedHeapTest.class);
+
+    static final int TEST_VALUE_SIZE = 1 << 12;
+    static final List<Integer> TEST_VALUES;
+
+    static {
+        List<Integer> values = new ArrayList<>(TEST_VALUE_SIZE);
+        for(int i = 0; i < TEST_VALUE_SIZE; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(42));
+        TEST_VALUES = Collections.unmodifiableList(values);
+    }
+
+    final RelaxedHeap<Integer> relaxed = new RelaxedHeap<>();
+    final ConcurrentHeap<Integer> strict = new ConcurrentHeap<>();
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    private static void addPop(Heap<Integer> heap) {
+        for(Integer value : TEST_VALUES) {
+            heap.add(value);
+            if((value & 1) == 0) {
+                heap.pop();
+            }
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50)
+    public void testRelaxedAddPop() {
+        addPop(relaxed);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50,
+            concurrency = CONCURRENCY_AVAILABLE_CORES)
+    public void testRelaxedAddPopAllCores() {
+        addPop(relaxed);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50)
+    public void testStrictAddPop() {
+        addPop(strict);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50,
+            concurrency = CONCURRENCY_AVAILABLE_CORES)
+    public void testStrictAddPopAllCores() {
+        addPop(strict);
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 1, warmupRounds = 0)
+    public void testRankError() throws Exception {
+        int shards = 16;
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(
+                Comparator.<Integer>naturalOrder(), shards);
+        RelaxedHeapTest.spread(heap, TEST_VALUES, shards);
+
+        // a Fenwick tree counting the values still in the heap
+        int[] present = new int[TEST_VALUE_SIZE + 1];
+        for(int i = 1; i <= TEST_VALUE_SIZE; i++) {
+            present[i]++;
+            int parent = i + (i & -i);
+            if(parent <= TEST_VALUE_SIZE) {
+                present[parent] += present[i];
+            }
+        }
+
+        long total = 0;
+        int max = 0;
+        while(!heap.isEmpty()) {
+            int value = heap.pop().get();
+            int rank = 0;
+            for(int i = value; i > 0; i -= i & -i) {
+                rank += present[i];
+            }
+            for(int i = value + 1; i <= TEST_VALUE_SIZE; i += i & -i) {
+                present[i]--;
+            }
+            total += rank;
+            max = Math.max(max, rank);
+        }
+
+        double mean = (double)total / TEST_VALUE_SIZE;
+        LOGGER.info("rank error over {} shards: mean {}, max {}", shards,
+                mean, max);
+        assertTrue(mean < shards);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import static com.carrotsearch.junitbenchmarks.BenchmarkOptions.CONCURRENCY_AVAILABLE_CORES;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Compares producer throughput of {@link ShardedHeap} against a single
+ * {@link BlockingHeap}, with one producer and with one producer per core.
+ * @author alexv
+ */
+public class BenchmarkShardedHeapTest {
+
+    static final int TEST_VALUE_SIZE = 1 << 12;
+    static final Integer[] TEST_VALUES;
+
+    static {
+        SecureRandom random = new SecureRandom("TEST_SEED".getBytes());
+
+        TEST_VALUES = new Integer[TEST_VALUE_SIZE];
+        Arrays.setAll(TEST_VALUES, i -> random.nextInt(TEST_VALUE_SIZE << 2));
+    }
+
+    final ShardedHeap<Integer> sharded = new ShardedHeap<>();
+    final BlockingHeap<Integer> locked = new BlockingHeap<>();
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50)
+    public void testShardedAdd() {
+        for(Integer value : TEST_VALUES) {
+            sharded.add(value);
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50,
+            concurrency = CONCURRENCY_AVAILABLE_CORES)
+    public void testShardedAddAllCores() {
+        for(Integer value : TEST_VALUES) {
+            sharded.add(value);
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50)
+    public void testLockedAdd() {
+        for(Integer value : TEST_VALUES) {
+            locked.add(value);
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 100, warmupRounds = 50,
+            concurrency = CONCURRENCY_AVAILABLE_CORES)
+    public void testLockedAddAllCores() {
+        for(Integer value : TEST_VALUES) {
+            locked.add(value);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.stream.IntStream;
+import static java.util.stream.Collectors.toList;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Compares {@link WeakHeap} against {@link BinaryHeap} on string keys sharing
+ * a long prefix, where comparisons dominate.
+ * @author alexv
+ */
+public class BenchmarkWeakHeapTest {
+
+    static final int TEST_VALUE_SIZE = 1 << 15;
+    static final List<String> TEST_VALUES;
+
+    static {
+        SecureRandom random = new SecureRandom("TEST_SEED".getBytes());
+
+        TEST_VALUES = IntStream.range(0, TEST_VALUE_SIZE)
+                .mapToObj(i -> String.format("queue/tenant/priority/%08x",
+                        random.nextInt()))
+                .collect(toList());
+    }
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    private static void popAll(Heap<String> heap) {
+        while(!heap.isEmpty()) {
+            heap.pop();
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testBinaryHeap() {
+        popAll(new BinaryHeap<>(TEST_VALUES));
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testWeakHeap() {
+        popAll(new WeakHeap<>(TEST_VALUES));
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testWeakHeapAdd() {
+        WeakHeap<String> heap = new WeakHeap<>();
+        TEST_VALUES.forEach(heap::add);
+        popAll(heap);
+    }
+}
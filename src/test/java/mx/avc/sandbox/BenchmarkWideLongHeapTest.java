@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Compares {@link WideLongHeap} arities against a boxed {@link BinaryHeap}.
+ * @author alexv
+ */
+public class BenchmarkWideLongHeapTest {
+
+    static final int TEST_VALUE_SIZE = 1 << 17;
+    static final long[] TEST_VALUES;
+    static final Long[] BOXED_TEST_VALUES;
+
+    static {
+        SecureRandom random = new SecureRandom("TEST_SEED".getBytes());
+
+        TEST_VALUES = new long[TEST_VALUE_SIZE];
+        Arrays.setAll(TEST_VALUES, i -> random.nextLong());
+        BOXED_TEST_VALUES = Arrays.stream(TEST_VALUES).boxed()
+                .toArray(Long[]::new);
+    }
+
+    @Rule
+    public BenchmarkRule rule = new BenchmarkRule();
+
+    private static void addPopAll(WideLongHeap heap) {
+        heap.addAll(TEST_VALUES);
+        while(!heap.isEmpty()) {
+            heap.pop();
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testBinaryHeap() {
+        BinaryHeap<Long> heap = new BinaryHeap<>();
+        for(Long value : BOXED_TEST_VALUES) {
+            heap.add(value);
+        }
+        while(!heap.isEmpty()) {
+            heap.pop();
+        }
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testWideHeap2() {
+        addPopAll(new WideLongHeap(2));
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testWideHeap8() {
+        addPopAll(new WideLongHeap(8));
+    }
+
+    @Test
+    @BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 10)
+    public void testWideHeap16() {
+        addPopAll(new WideLongHeap(16));
+    }
+}
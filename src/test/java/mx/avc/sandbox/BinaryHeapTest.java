@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.slf4j.Logger;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -414,4 +415,136 @@ public class BinaryHeapTest {
         assertHeapConsistency(heap);
         assertTrue(heap.isEmpty());
     }
+
+    @Test
+    public void testRemoveComprehensive() {
+        LOGGER.info("Testing remove() - comprehensive");
+        for(Integer removed : TEST_VALUES) {
+            BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+
+            assertTrue(heap.remove(removed));
+            assertHeapConsistency(heap);
+            assertFalse(heap.remove(removed));
+            assertEquals(TEST_VALUES.size() - 1, heap.size());
+
+            SORTED_TEST_VALUES.stream().filter(e -> !e.equals(removed))
+                    .forEach(e -> assertEquals(e, heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        LOGGER.info("Testing removeIf()");
+        for(int divisor = 1; divisor <= 7; divisor++) {
+            for(int remainder = 0; remainder < divisor; remainder++) {
+                int d = divisor;
+                int r = remainder;
+                BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+
+                assertTrue(heap.removeIf(e -> e % d == r));
+                assertHeapConsistency(heap);
+                assertFalse(heap.removeIf(e -> e % d == r));
+
+                SORTED_TEST_VALUES.stream().filter(e -> e % d != r)
+                        .forEach(e -> assertEquals(e, heap.pop().get()));
+                assertTrue(heap.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testRemoveIfThrows() {
+        LOGGER.info("Testing removeIf() - predicate throws");
+        BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+
+        try {
+            heap.removeIf(e -> {
+                if(e == 40) {
+                    throw new IllegalStateException();
+                }
+                return e % 2 == 0;
+            });
+            fail();
+        } catch(IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(TEST_VALUES.size(), heap.size());
+        assertHeapConsistency(heap);
+        SORTED_TEST_VALUES.forEach(e -> assertEquals(e, heap.pop().get()));
+    }
+
+    @Test
+    public void testRetainAll() {
+        LOGGER.info("Testing retainAll()");
+        BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+        List<Integer> retained = SORTED_TEST_VALUES.subList(20, 40);
+
+        assertTrue(heap.retainAll(retained));
+        assertHeapConsistency(heap);
+        assertFalse(heap.retainAll(retained));
+
+        retained.forEach(e -> assertEquals(e, heap.pop().get()));
+        assertTrue(heap.isEmpty());
+
+        assertFalse(heap.retainAll(Collections.emptyList()));
+    }
+
+    @Test
+    public void testPopWhile() {
+        LOGGER.info("Testing popWhile()");
+        for(int bound = 0; bound <= SORTED_TEST_VALUES.size(); bound++) {
+            int b = bound;
+            BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+
+            BinaryHeap<Integer> head = heap.popWhile(e -> e <= b);
+
+            assertHeapConsistency(head);
+            assertHeapConsistency(heap);
+            SORTED_TEST_VALUES.stream().filter(e -> e <= b)
+                    .forEach(e -> assertEquals(e, head.pop().get()));
+            assertTrue(head.isEmpty());
+            SORTED_TEST_VALUES.stream().filter(e -> e > b)
+                    .forEach(e -> assertEquals(e, heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testPopUntil() {
+        LOGGER.info("Testing popUntil()");
+        BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_VALUES);
+
+        assertTrue(heap.popUntil(0).isEmpty());
+        assertEquals(10, heap.popUntil(10).size());
+        assertEquals(Integer.valueOf(11), heap.peek().get());
+        assertEquals(SORTED_TEST_VALUES.size() - 10, heap.size());
+
+        assertTrue(new BinaryHeap<Integer>().popUntil(10).isEmpty());
+    }
+
+    @Test
+    public void testPopWhileNullItems() {
+        LOGGER.info("Testing popWhile() - null items");
+        Comparator<Integer> nulls_last =
+                Comparator.nullsLast(Comparator.naturalOrder());
+        List<Integer> items = new ArrayList<>(asList(5, null, 1, 4, null, 2));
+        for(int bound = 0; bound <= 5; bound++) {
+            int b = bound;
+            BinaryHeap<Integer> heap = new BinaryHeap<>(nulls_last, items);
+
+            BinaryHeap<Integer> head =
+                    heap.popWhile(e -> e != null && e <= b);
+
+            long matching = items.stream()
+                    .filter(e -> e != null && e <= b).count();
+            assertEquals(matching, head.size());
+            assertEquals(items.size() - matching, heap.size());
+            assertHeapConsistency(heap);
+            // only the null items are left past the greatest one
+            assertEquals(4 - matching, heap.popUntil(5).size());
+            assertEquals(2, heap.size());
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class BlockedLongHeapTest {
+    private static final Logger LOGGER = getLogger(BlockedLongHeapTest.class);
+
+    private static final int[] PAGE_SLOTS = new int[] { 4, 8, 64, 512 };
+
+    private static final long[] TEST_VALUES = new Random(42).longs(20000)
+            .toArray();
+
+    private static final long[] SORTED_TEST_VALUES;
+
+    static {
+        SORTED_TEST_VALUES = TEST_VALUES.clone();
+        Arrays.sort(SORTED_TEST_VALUES);
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        BlockedLongHeap heap = new BlockedLongHeap();
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(1).isPresent());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testAddPopAll() {
+        LOGGER.info("Testing add()/pop() - all");
+        for(int pageSlots : PAGE_SLOTS) {
+            BlockedLongHeap heap = new BlockedLongHeap(pageSlots);
+            heap.addAll(TEST_VALUES);
+            assertEquals(TEST_VALUES.length, heap.size());
+
+            for(long expected : SORTED_TEST_VALUES) {
+                assertEquals(expected, heap.peek().getAsLong());
+                assertEquals(expected, heap.pop().getAsLong());
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testInterleaved() {
+        LOGGER.info("Testing add()/pop() - interleaved");
+        for(int pageSlots : PAGE_SLOTS) {
+            BlockedLongHeap heap = new BlockedLongHeap(pageSlots);
+            WideLongHeap reference = new WideLongHeap(2);
+            Random random = new Random(pageSlots);
+
+            for(long value : TEST_VALUES) {
+                heap.add(value);
+                reference.add(value);
+                if(random.nextInt(3) == 0) {
+                    assertEquals(reference.pop(), heap.pop());
+                }
+            }
+            while(!reference.isEmpty()) {
+                assertEquals(reference.pop(), heap.pop());
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        LOGGER.info("Testing update()");
+        BlockedLongHeap heap = new BlockedLongHeap(8);
+        heap.addAll(TEST_VALUES);
+
+        assertEquals(SORTED_TEST_VALUES[0], heap.update(Long.MAX_VALUE)
+                .getAsLong());
+        assertEquals(SORTED_TEST_VALUES[1], heap.peek().getAsLong());
+
+        heap.update(Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, heap.pop().getAsLong());
+        for(int i = 2; i < SORTED_TEST_VALUES.length; i++) {
+            assertEquals(SORTED_TEST_VALUES[i], heap.pop().getAsLong());
+        }
+        assertEquals(Long.MAX_VALUE, heap.pop().getAsLong());
+    }
+
+    @Test
+    public void testMappedStorage() throws IOException {
+        LOGGER.info("Testing BlockedLongHeap(LongBuffer, int) - mapped file");
+        Path file = folder.newFile().toPath();
+        int pageSlots = 64;
+        int pages = 16;
+
+        try(FileChannel channel = FileChannel.open(file, CREATE, READ,
+                WRITE)) {
+            LongBuffer storage = channel.map(READ_WRITE, 0,
+                    pages * pageSlots * Long.BYTES).asLongBuffer();
+            BlockedLongHeap heap = new BlockedLongHeap(storage, pageSlots);
+            assertEquals(pages * (pageSlots - 1), heap.capacity());
+
+            long[] values = Arrays.copyOf(TEST_VALUES, heap.capacity());
+            heap.addAll(values);
+            try {
+                heap.add(0);
+                fail();
+            } catch(IllegalStateException e) {
+                assertEquals(values.length, heap.size());
+            }
+
+            Arrays.sort(values);
+            for(long expected : values) {
+                assertEquals(expected, heap.pop().getAsLong());
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageSlots() {
+        LOGGER.info("Testing BlockedLongHeap(int) - invalid page size");
+        new BlockedLongHeap(24);
+    }
+}
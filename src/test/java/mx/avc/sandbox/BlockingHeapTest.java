@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class BlockingHeapTest {
+    private static final Logger LOGGER = getLogger(BlockingHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER = naturalOrder();
+
+    @Test
+    public void testTake() throws Exception {
+        LOGGER.info("Testing take()");
+        BlockingHeap<Integer> heap = new BlockingHeap<>();
+        heap.addAll(TEST_ITEMS);
+
+        for(Integer expected : SORTED_ITEMS) {
+            assertEquals(expected, heap.take());
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test(timeout = 10000)
+    public void testTakeWaits() throws Exception {
+        LOGGER.info("Testing take() - waits for an item");
+        BlockingHeap<Integer> heap = new BlockingHeap<>();
+
+        CompletableFuture<Integer> taken = CompletableFuture.supplyAsync(() -> {
+            try {
+                return heap.take();
+            } catch(InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(taken.isDone());
+
+        heap.add(42);
+        assertEquals(42, (int)taken.get(5, SECONDS));
+    }
+
+    @Test
+    public void testPollTimeout() throws Exception {
+        LOGGER.info("Testing poll() - timeout");
+        BlockingHeap<Integer> heap = new BlockingHeap<>();
+
+        Optional<Integer> result = heap.poll(10, MILLISECONDS);
+
+        assertFalse(result.isPresent());
+    }
+
+    @Test
+    public void testDrainTo() {
+        LOGGER.info("Testing drainTo()");
+        BlockingHeap<Integer> heap = new BlockingHeap<>();
+        heap.addAll(TEST_ITEMS);
+        List<Integer> target = new ArrayList<>();
+
+        assertEquals(10, heap.drainTo(target, 10));
+        assertEquals(SORTED_ITEMS.subList(0, 10), target);
+
+        assertEquals(TEST_ITEMS.size() - 10, heap.drainTo(target));
+        assertEquals(SORTED_ITEMS, target);
+        assertTrue(heap.isEmpty());
+        assertEquals(0, heap.drainTo(target));
+    }
+
+    @Test
+    public void testBoundedOffer() throws Exception {
+        LOGGER.info("Testing offer() - bounded");
+        BlockingHeap<Integer> heap = new BlockingHeap<>(NATURAL_ORDER, 2);
+
+        assertTrue(heap.offer(3));
+        assertTrue(heap.offer(1));
+        assertFalse(heap.offer(2));
+        assertFalse(heap.offer(2, 10, MILLISECONDS));
+        assertEquals(0, heap.remainingCapacity());
+
+        assertEquals(1, (int)heap.pop().get());
+        assertTrue(heap.offer(2));
+        assertEquals(asList(2, 3), asList(heap.take(), heap.take()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBoundedAdd() {
+        LOGGER.info("Testing add() - bounded");
+        BlockingHeap<Integer> heap = new BlockingHeap<>(NATURAL_ORDER, 1);
+
+        heap.add(1);
+        heap.add(2);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBoundedAddAll() {
+        LOGGER.info("Testing addAll() - bounded");
+        BlockingHeap<Integer> heap = new BlockingHeap<>(NATURAL_ORDER, 10);
+
+        heap.addAll(TEST_ITEMS);
+    }
+
+    @Test(timeout = 10000)
+    public void testPutWaits() throws Exception {
+        LOGGER.info("Testing put() - waits for room");
+        BlockingHeap<Integer> heap = new BlockingHeap<>(NATURAL_ORDER, 1);
+        heap.put(2);
+
+        CompletableFuture<Void> put = CompletableFuture.runAsync(() -> {
+            try {
+                heap.put(1);
+            } catch(InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(put.isDone());
+
+        assertEquals(1, heap.drainTo(new ArrayList<>(), 5));
+        put.get(5, SECONDS);
+        assertEquals(1, (int)heap.take());
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void testTakeInterrupted() throws Exception {
+        LOGGER.info("Testing take() - interrupted");
+        BlockingHeap<Integer> heap = new BlockingHeap<>();
+
+        Thread.currentThread().interrupt();
+        heap.take();
+    }
+}
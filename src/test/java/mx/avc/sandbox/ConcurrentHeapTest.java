@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class ConcurrentHeapTest {
+    private static final Logger LOGGER = getLogger(ConcurrentHeapTest.class);
+
+    @Test
+    public void testPeekEmpty() {
+        LOGGER.info("Testing peek() - empty");
+        ConcurrentHeap<Integer> heap = new ConcurrentHeap<>();
+
+        assertFalse(heap.peek().isPresent());
+        assertTrue(heap.isEmpty());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void testPublishedTop() {
+        LOGGER.info("Testing peek() - follows mutations");
+        ConcurrentHeap<Integer> heap = new ConcurrentHeap<>();
+
+        heap.add(5);
+        assertEquals(5, (int)heap.peek().get());
+        heap.addAll(TEST_ITEMS);
+        assertEquals(SORTED_ITEMS.get(0), heap.peek().get());
+        assertEquals(TEST_ITEMS.size() + 1, heap.size());
+
+        assertEquals(SORTED_ITEMS.get(0), heap.update(() -> 100).get());
+        assertEquals(SORTED_ITEMS.get(1), heap.peek().get());
+
+        heap.pop(10);
+        assertEquals(SORTED_ITEMS.get(10), heap.peek().get());
+
+        heap.clear();
+        assertFalse(heap.peek().isPresent());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testPublishedAfterFailure() {
+        LOGGER.info("Testing peek() - follows failed mutations");
+        AtomicBoolean failing = new AtomicBoolean();
+        ConcurrentHeap<Integer> heap = new ConcurrentHeap<>((a, b) -> {
+            if(failing.get()) {
+                throw new IllegalStateException();
+            }
+            return Integer.compare(a, b);
+        });
+        heap.addAll(asList(1, 2, 3));
+
+        failing.set(true);
+        try {
+            heap.update(() -> 10);
+            fail("expected IllegalStateException");
+        } catch(IllegalStateException e) {
+        }
+        try {
+            heap.add(0);
+            fail("expected IllegalStateException");
+        } catch(IllegalStateException e) {
+        }
+        failing.set(false);
+
+        // the published values match the heap left by the failed writes
+        assertEquals(4, heap.size());
+        Integer top = heap.peek().get();
+        assertEquals(top, heap.pop().get());
+    }
+
+    @Test
+    public void testPopAll() {
+        LOGGER.info("Testing pop() - all");
+        ConcurrentHeap<Integer> heap = new ConcurrentHeap<>();
+        heap.addAll(TEST_ITEMS);
+
+        SORTED_ITEMS.forEach(e -> {
+            assertEquals(e, heap.peek().get());
+            assertEquals(e, heap.pop().get());
+        });
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        LOGGER.info("Testing peek() - concurrent readers");
+        ConcurrentHeap<Integer> heap = new ConcurrentHeap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        List<CompletableFuture<Void>> readers = new ArrayList<>();
+        for(int r = 0; r < 4; r++) {
+            readers.add(CompletableFuture.runAsync(() -> {
+                while(running.get()) {
+                    Optional<Integer> top = heap.peek();
+                    assertTrue(!top.isPresent() || top.get() >= 0);
+                    assertTrue(heap.size() >= 0);
+                }
+            }));
+        }
+
+        for(int i = 0; i < 20000; i++) {
+            heap.add(i);
+            if(i % 3 == 0) {
+                heap.pop();
+            }
+        }
+        running.set(false);
+        for(CompletableFuture<Void> reader : readers) {
+            reader.get(10, SECONDS);
+        }
+
+        int previous = -1;
+        while(!heap.isEmpty()) {
+            int item = heap.pop().get();
+            assertTrue(previous < item);
+            previous = item;
+        }
+    }
+}
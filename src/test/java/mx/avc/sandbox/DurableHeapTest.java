@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class DurableHeapTest {
+    private static final Logger LOGGER = getLogger(DurableHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER = naturalOrder();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = folder.newFolder().toPath();
+    }
+
+    private DurableHeap<Integer> open() throws IOException {
+        return new DurableHeap<>(directory, ElementCodec.INTEGER,
+                NATURAL_ORDER);
+    }
+
+    private DurableHeap<Integer> open(int journalCapacity) throws IOException {
+        return new DurableHeap<>(directory, ElementCodec.INTEGER,
+                NATURAL_ORDER, journalCapacity, 16);
+    }
+
+    private List<String> files() throws IOException {
+        try(Stream<Path> listing = Files.list(directory)) {
+            return listing.map(p -> p.getFileName().toString()).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        LOGGER.info("Testing DurableHeap - reopen");
+
+        try(DurableHeap<Integer> heap = open()) {
+            TEST_ITEMS.forEach(heap::add);
+        }
+
+        try(DurableHeap<Integer> heap = open()) {
+            assertEquals(TEST_ITEMS.size(), heap.size());
+            SORTED_ITEMS.forEach(e -> assertEquals(e, heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+
+        try(DurableHeap<Integer> heap = open()) {
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testRecoverWithoutClose() throws IOException {
+        LOGGER.info("Testing DurableHeap - recover without close");
+
+        DurableHeap<Integer> crashed = open();
+        crashed.addAll(TEST_ITEMS);
+        crashed.pop();
+        crashed.pop(10);
+        crashed.update(() -> 100);
+
+        try(DurableHeap<Integer> heap = open()) {
+            assertEquals(crashed.size(), heap.size());
+            while(!crashed.isEmpty()) {
+                assertEquals(crashed.pop().get(), heap.pop().get());
+            }
+            assertTrue(heap.isEmpty());
+        }
+        crashed.close();
+    }
+
+    /**
+     * Encodes like {@link ElementCodec#INTEGER}, but fails halfway through
+     * negative items, after writing part of them.
+     */
+    private static final ElementCodec<Integer> FAILING_CODEC =
+            new ElementCodec<Integer>() {
+        @Override
+        public int size(Integer item) {
+            return 2 * Integer.BYTES;
+        }
+
+        @Override
+        public void encode(Integer item, ByteBuffer buffer) {
+            buffer.putInt(-1);
+            if(item < 0) {
+                throw new IllegalArgumentException();
+            }
+            buffer.putInt(item);
+        }
+
+        @Override
+        public Integer decode(ByteBuffer buffer) {
+            buffer.getInt();
+            return buffer.getInt();
+        }
+    };
+
+    @Test
+    public void testEncodeFailure() throws IOException {
+        LOGGER.info("Testing DurableHeap - codec throws");
+
+        try(DurableHeap<Integer> heap = new DurableHeap<>(directory,
+                FAILING_CODEC, NATURAL_ORDER)) {
+            heap.add(3);
+            for(Runnable failure : asList(
+                    (Runnable)() -> heap.add(-1),
+                    () -> heap.update(() -> -2),
+                    () -> heap.addAll(asList(5, -3)))) {
+                try {
+                    failure.run();
+                    fail("expected IllegalArgumentException");
+                } catch(IllegalArgumentException e) {
+                }
+            }
+            heap.add(1);
+            heap.addAll(asList(4, 2));
+            heap.update(() -> 6);
+            assertEquals(4, heap.size());
+        }
+
+        try(DurableHeap<Integer> heap = new DurableHeap<>(directory,
+                FAILING_CODEC, NATURAL_ORDER)) {
+            assertEquals(asList(2, 3, 4, 6), asList(heap.pop().get(),
+                    heap.pop().get(), heap.pop().get(), heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        LOGGER.info("Testing DurableHeap - clear");
+
+        try(DurableHeap<Integer> heap = open()) {
+            heap.addAll(TEST_ITEMS);
+            heap.clear();
+            heap.add(7);
+        }
+
+        try(DurableHeap<Integer> heap = open()) {
+            assertEquals(1, heap.size());
+            assertEquals(7, (int)heap.pop().get());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        LOGGER.info("Testing DurableHeap - journal compaction");
+
+        try(DurableHeap<Integer> heap = open(128)) {
+            TEST_ITEMS.forEach(heap::add);
+            for(int i = 0; i < 5; i++) {
+                heap.pop();
+            }
+        }
+
+        List<String> files = files();
+        assertEquals(2, files.size());
+        assertTrue(files.get(0).startsWith("checkpoint-"));
+        assertTrue(files.get(1).startsWith("journal-"));
+        assertFalse(files.contains("journal-0.log"));
+
+        try(DurableHeap<Integer> heap = open(128)) {
+            SORTED_ITEMS.subList(5, SORTED_ITEMS.size())
+                    .forEach(e -> assertEquals(e, heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testOversizedAddAll() throws IOException {
+        LOGGER.info("Testing DurableHeap - addAll larger than the journal");
+
+        try(DurableHeap<Integer> heap = open(64)) {
+            heap.addAll(TEST_ITEMS);
+        }
+
+        try(DurableHeap<Integer> heap = open(64)) {
+            SORTED_ITEMS.forEach(e -> assertEquals(e, heap.pop().get()));
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testExplicitCheckpoint() throws IOException {
+        LOGGER.info("Testing DurableHeap - explicit checkpoint");
+
+        try(DurableHeap<Integer> heap = open()) {
+            heap.addAll(asList(3, 1, 2));
+            heap.checkpoint();
+            heap.add(0);
+        }
+
+        assertEquals(asList("checkpoint-1.heap", "journal-1.log"), files());
+
+        try(DurableHeap<Integer> heap = open()) {
+            assertEquals(asList(0, 1, 2, 3), asList(heap.pop().get(),
+                    heap.pop().get(), heap.pop().get(), heap.pop().get()));
+        }
+    }
+}
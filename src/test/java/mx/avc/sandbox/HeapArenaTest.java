@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class HeapArenaTest {
+    private static final Logger LOGGER = getLogger(HeapArenaTest.class);
+
+    private static final Comparator<Integer> REVERSE_ORDER =
+            Comparator.reverseOrder();
+
+    @Test
+    public void testOfferTopK() {
+        LOGGER.info("Testing offer() - top K");
+        HeapArena<Integer> arena = new HeapArena<>(10);
+        int heap = arena.newHeap();
+
+        for(Integer item : TEST_ITEMS) {
+            arena.offer(heap, item);
+        }
+
+        assertEquals(10, arena.size(heap));
+        int first = SORTED_ITEMS.size() - 10;
+        assertEquals(SORTED_ITEMS.get(first), arena.peek(heap).get());
+        assertFalse(arena.offer(heap, SORTED_ITEMS.get(first)));
+        SORTED_ITEMS.subList(first, SORTED_ITEMS.size())
+                .forEach(e -> assertEquals(e, arena.pop(heap).get()));
+        assertFalse(arena.pop(heap).isPresent());
+    }
+
+    @Test
+    public void testManyHeaps() {
+        LOGGER.info("Testing offer() - many heaps");
+        int heaps = 10_000;
+        HeapArena<Integer> arena = new HeapArena<>(REVERSE_ORDER, 4, 0);
+        List<List<Integer>> expected = new ArrayList<>();
+        for(int i = 0; i < heaps; i++) {
+            assertEquals(i, arena.newHeap());
+            expected.add(new ArrayList<>());
+        }
+
+        Random random = new Random(42);
+        for(int i = 0; i < 20 * heaps; i++) {
+            int heap = random.nextInt(heaps);
+            int item = random.nextInt();
+            arena.offer(heap, item);
+            expected.get(heap).add(item);
+        }
+
+        assertEquals(heaps, arena.heapCount());
+        for(int heap = 0; heap < heaps; heap++) {
+            List<Integer> items = expected.get(heap);
+            items.sort(Comparator.naturalOrder());
+            BinaryHeap<Integer> drained = arena.drain(heap);
+            assertEquals(Math.min(4, items.size()), drained.size());
+            // reverse order keeps the smallest items, largest first
+            for(int i = drained.size() - 1; i >= 0; i--) {
+                assertEquals(items.get(i), drained.pop().get());
+            }
+            assertEquals(0, arena.size(heap));
+        }
+    }
+
+    @Test
+    public void testDrain() {
+        LOGGER.info("Testing drain()");
+        HeapArena<Integer> arena = new HeapArena<>(100);
+        int empty = arena.newHeap();
+        int heap = arena.newHeap();
+        TEST_ITEMS.forEach(e -> arena.offer(heap, e));
+
+        assertTrue(arena.drain(empty).isEmpty());
+        BinaryHeap<Integer> drained = arena.drain(heap);
+
+        assertEquals(0, arena.size(heap));
+        SORTED_ITEMS.forEach(e -> assertEquals(e, drained.pop().get()));
+        assertTrue(arena.offer(heap, 1));
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        HeapArena<Integer> arena = new HeapArena<>(3);
+        int heap = arena.newHeap();
+        arena.offer(heap, 1);
+
+        arena.clear();
+
+        assertEquals(0, arena.heapCount());
+        assertEquals(heap, arena.newHeap());
+        assertEquals(0, arena.size(heap));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidHeap() {
+        LOGGER.info("Testing offer() - invalid heap");
+        HeapArena<Integer> arena = new HeapArena<>(3);
+        arena.newHeap();
+
+        arena.offer(1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        LOGGER.info("Testing HeapArena - invalid capacity");
+        new HeapArena<>(0);
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import static java.util.Arrays.asList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import static mx.avc.sandbox.TestUtils.getFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class HeapCacheTest {
+    private static final Logger LOGGER = getLogger(HeapCacheTest.class);
+
+    private static final long TTL = 1000;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testLeastFrequentlyUsed() {
+        LOGGER.info("Testing put() - least frequently used");
+        HeapCache<String, Integer> cache = new HeapCache<>(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.get("a");
+        cache.get("c");
+
+        assertFalse(cache.put("d", 4).isPresent());
+
+        assertEquals(3, cache.size());
+        assertFalse(cache.get("b").isPresent());
+        assertEquals(Optional.of(1), cache.get("a"));
+        assertEquals(Optional.of(3), cache.get("c"));
+        assertEquals(Optional.of(4), cache.get("d"));
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        LOGGER.info("Testing get() - expire after access");
+        HeapCache<String, Integer> cache = new HeapCache<>(10, TTL, clock::get);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        clock.set(TTL / 2);
+        cache.get("a");
+
+        clock.set(TTL);
+        assertFalse(cache.get("b").isPresent());
+        assertEquals(1, cache.size());
+
+        clock.set(TTL + TTL / 2 - 1);
+        assertEquals(Optional.of(1), cache.get("a"));
+        clock.set(3 * TTL);
+        cache.cleanUp();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void testEvictFirstExpiring() {
+        LOGGER.info("Testing put() - evict first expiring");
+        HeapCache<Integer, Integer> cache = new HeapCache<>(2, TTL, clock::get);
+        cache.put(1, 1);
+        clock.incrementAndGet();
+        cache.put(2, 2);
+        clock.incrementAndGet();
+        cache.get(1);
+        clock.incrementAndGet();
+
+        assertEquals(Optional.of(2), cache.put(2, 3));
+        cache.put(3, 3);
+
+        assertFalse(cache.get(1).isPresent());
+        assertEquals(Optional.of(3), cache.get(2));
+    }
+
+    @Test
+    public void testPutAll() {
+        LOGGER.info("Testing putAll()");
+        HeapCache<Integer, Integer> cache = new HeapCache<>(100);
+        Map<Integer, Integer> entries = new HashMap<>();
+        for(int i = 0; i < 1000; i++) {
+            entries.put(i, i);
+            if(i % 10 == 0) {
+                cache.put(i, i);
+            }
+        }
+
+        cache.putAll(entries);
+
+        // the entries put twice are the most frequently used
+        assertEquals(100, cache.size());
+        for(int i = 0; i < 1000; i += 10) {
+            assertEquals(Optional.of(i), cache.get(i));
+        }
+    }
+
+    @Test
+    public void testReprioritizeInPlace() {
+        LOGGER.info("Testing get() - reprioritize in place");
+        HeapCache<Integer, Integer> cache = new HeapCache<>(10);
+        for(int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+
+        for(int i = 0; i < 10_000; i++) {
+            cache.get(i % 10);
+        }
+        // room is made first, evicting the oldest of the equally used
+        cache.put(10, 10);
+
+        Object[] heap = getFieldValue(cache, "heap");
+        assertEquals(16, heap.length);
+        assertEquals(10, (int)getFieldValue(cache, "size"));
+        assertEquals(Optional.of(10), cache.get(10));
+        assertFalse(cache.get(0).isPresent());
+        assertEquals(Optional.of(9), cache.get(9));
+    }
+
+    @Test
+    public void testPutAllMakesRoom() {
+        LOGGER.info("Testing putAll() - makes room first");
+        HeapCache<Integer, Integer> cache = new HeapCache<>(4);
+        for(int i = 0; i < 4; i++) {
+            cache.put(i, i);
+            cache.get(i);
+            cache.get(i);
+        }
+        cache.get(3);
+
+        Map<Integer, Integer> entries = new HashMap<>();
+        entries.put(0, 0);
+        entries.put(10, 10);
+        entries.put(11, 11);
+        cache.putAll(entries);
+
+        // 1 and 2 are evicted; 0 is put again, so it stays
+        assertEquals(4, cache.size());
+        for(int key : asList(0, 3, 10, 11)) {
+            assertEquals(Optional.of(key), cache.get(key));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        LOGGER.info("Testing remove()");
+        HeapCache<String, Integer> cache = new HeapCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        assertEquals(Optional.of(1), cache.remove("a"));
+        assertFalse(cache.remove("a").isPresent());
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(Optional.of(2), cache.get("b"));
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        LOGGER.info("Testing HeapCache - invalid size");
+        new HeapCache<>(0);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class HeapEventsTest {
+    private static final Logger LOGGER = getLogger(HeapEventsTest.class);
+
+    private static final String RESIZE = "mx.avc.sandbox.HeapResize";
+
+    private static final String BULK = "mx.avc.sandbox.HeapBulkOperation";
+
+    private static final String SLOW = "mx.avc.sandbox.HeapSlowOperation";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private interface Workload {
+        void run();
+    }
+
+    private List<RecordedEvent> record(Workload workload, String... enabled)
+            throws IOException {
+        Path file = folder.newFile("heap.jfr").toPath();
+        try(Recording recording = new Recording()) {
+            for(String name : enabled) {
+                recording.enable(name).withoutThreshold();
+            }
+            recording.start();
+            workload.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        // events of the package are enabled by default, keep only the ones
+        // asked for
+        List<String> names = Arrays.asList(enabled);
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(e -> names.contains(e.getEventType().getName()))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testResizeEvents() throws IOException {
+        LOGGER.info("Testing HeapEvents - resize");
+        List<RecordedEvent> events = record(() -> {
+            BinaryHeap<Integer> heap = new BinaryHeap<>();
+            TEST_ITEMS.forEach(heap::add);
+            heap.trimToSize();
+        }, RESIZE);
+
+        assertTrue(events.size() > 2);
+        int capacity = 0;
+        for(RecordedEvent event : events) {
+            assertEquals(RESIZE, event.getEventType().getName());
+            assertEquals(capacity, event.getInt("oldCapacity"));
+            capacity = event.getInt("newCapacity");
+        }
+        assertEquals(TEST_ITEMS.size(), capacity);
+    }
+
+    @Test
+    public void testBulkEvents() throws IOException {
+        LOGGER.info("Testing HeapEvents - bulk operations");
+        List<RecordedEvent> events = record(() -> {
+            BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_ITEMS);
+            heap.addAll(TEST_ITEMS);
+            heap.pop(10);
+            heap.removeIf(e -> e % 2 == 0);
+        }, BULK);
+
+        int size = TEST_ITEMS.size();
+        assertEquals(4, events.size());
+        assertBulk(events.get(0), "heapify", size, size);
+        assertBulk(events.get(1), "addAll", size, 2 * size);
+        assertBulk(events.get(2), "pop", 10, 2 * size - 10);
+        assertEquals("removeIf", events.get(3).getString("operation"));
+        assertTrue(events.stream().allMatch(e -> e.getDuration()
+                .toNanos() >= 0));
+    }
+
+    private static void assertBulk(RecordedEvent event, String operation,
+            int count, int size) {
+        assertEquals(BULK, event.getEventType().getName());
+        assertEquals(operation, event.getString("operation"));
+        assertEquals(count, event.getInt("count"));
+        assertEquals(size, event.getInt("size"));
+    }
+
+    @Test
+    public void testSlowOperationEvents() throws IOException {
+        LOGGER.info("Testing HeapEvents - slow operations");
+        List<RecordedEvent> events = record(() -> {
+            BinaryHeap<Integer> heap = new BinaryHeap<>();
+            heap.add(2);
+            heap.add(1);
+            heap.update(() -> 3);
+            heap.remove(3);
+            heap.pop();
+        }, SLOW);
+
+        assertEquals("add,add,update,remove,pop", events.stream()
+                .map(e -> e.getString("operation"))
+                .collect(Collectors.joining(",")));
+        assertEquals(0, events.get(4).getInt("size"));
+    }
+
+    @Test
+    public void testDisabledEvents() throws IOException, ParseException {
+        LOGGER.info("Testing HeapEvents - disabled");
+        assertNull(HeapEvents.beginSlowOperation());
+        assertNull(HeapEvents.beginBulkOperation());
+        assertNull(HeapEvents.beginResize());
+        HeapEvents.reportSlowOperation(null, "pop", 0);
+
+        // a default recording leaves the per operation event off
+        try(Recording recording = new Recording(
+                Configuration.getConfiguration("default"))) {
+            recording.start();
+            assertNull(HeapEvents.beginSlowOperation());
+        }
+
+        try(Recording recording = new Recording()) {
+            recording.enable(SLOW);
+            recording.start();
+            assertNotNull(HeapEvents.beginSlowOperation());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class HeapPublisherTest {
+    private static final Logger LOGGER = getLogger(HeapPublisherTest.class);
+
+    private static final Object COMPLETE = new Object();
+
+    /**
+     * Records all the signals in a queue.
+     */
+    static class RecordingSubscriber<T> implements Subscriber<T> {
+        final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+        final CountDownLatch subscribed = new CountDownLatch(1);
+        volatile Subscription subscription;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            subscribed.countDown();
+        }
+
+        @Override
+        public void onNext(T item) {
+            signals.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            signals.add(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add(COMPLETE);
+        }
+
+        Subscription awaitSubscription() throws InterruptedException {
+            assertTrue(subscribed.await(5, SECONDS));
+            return subscription;
+        }
+
+        Object next() throws InterruptedException {
+            return signals.poll(5, SECONDS);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRequestInBatches() throws Exception {
+        LOGGER.info("Testing HeapPublisher - request in batches");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        publisher.offerAll(TEST_ITEMS);
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+        publisher.subscribe(subscriber);
+        Subscription subscription = subscriber.awaitSubscription();
+
+        subscription.request(10);
+        for(Integer expected : SORTED_ITEMS.subList(0, 10)) {
+            assertEquals(expected, subscriber.next());
+        }
+        assertNull(subscriber.signals.poll(50, MILLISECONDS));
+        assertEquals(TEST_ITEMS.size() - 10, publisher.size());
+
+        subscription.request(Long.MAX_VALUE);
+        for(Integer expected : SORTED_ITEMS.subList(10, SORTED_ITEMS.size())) {
+            assertEquals(expected, subscriber.next());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitForItems() throws Exception {
+        LOGGER.info("Testing HeapPublisher - wait for new items");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+        publisher.subscribe(subscriber);
+        subscriber.awaitSubscription().request(2);
+        assertNull(subscriber.signals.poll(50, MILLISECONDS));
+
+        publisher.offer(5);
+        assertEquals(5, subscriber.next());
+        publisher.offerAll(asList(3, 1));
+        assertEquals(1, subscriber.next());
+        assertNull(subscriber.signals.poll(50, MILLISECONDS));
+        assertEquals(1, publisher.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testComplete() throws Exception {
+        LOGGER.info("Testing HeapPublisher - completion");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        publisher.offerAll(asList(2, 1));
+        publisher.close();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+        publisher.subscribe(subscriber);
+        subscriber.awaitSubscription().request(5);
+
+        assertEquals(1, subscriber.next());
+        assertEquals(2, subscriber.next());
+        assertEquals(COMPLETE, subscriber.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOfferClosed() {
+        LOGGER.info("Testing HeapPublisher - offer after close");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        publisher.close();
+
+        publisher.offer(1);
+    }
+
+    @Test(timeout = 10000)
+    public void testCancel() throws Exception {
+        LOGGER.info("Testing HeapPublisher - cancel");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        publisher.offerAll(TEST_ITEMS);
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        publisher.subscribe(new RecordingSubscriber<Integer>() {
+            @Override
+            public void onSubscribe(Subscription s) {
+                super.onSubscribe(s);
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                received.add(item);
+                if(received.size() == 3) {
+                    subscription.cancel();
+                    cancelled.countDown();
+                }
+            }
+        });
+
+        assertTrue(cancelled.await(5, SECONDS));
+        while(publisher.size() < TEST_ITEMS.size() - 3) {
+            Thread.sleep(1);
+        }
+        assertEquals(SORTED_ITEMS.subList(0, 3), received);
+        assertEquals(TEST_ITEMS.size() - 3, publisher.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testInvalidRequest() throws Exception {
+        LOGGER.info("Testing HeapPublisher - invalid request");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+        publisher.subscribe(subscriber);
+        subscriber.awaitSubscription().request(0);
+
+        assertTrue(subscriber.next() instanceof IllegalArgumentException);
+    }
+
+    @Test(timeout = 10000)
+    public void testSecondSubscriber() throws Exception {
+        LOGGER.info("Testing HeapPublisher - second subscriber");
+        HeapPublisher<Integer> publisher = new HeapPublisher<>();
+        publisher.subscribe(new RecordingSubscriber<>());
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>();
+
+        publisher.subscribe(subscriber);
+
+        subscriber.awaitSubscription();
+        assertTrue(subscriber.next() instanceof IllegalStateException);
+    }
+}
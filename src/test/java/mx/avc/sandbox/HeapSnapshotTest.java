@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import static java.nio.file.Files.readAllBytes;
+import static java.nio.file.Files.write;
+import java.nio.file.Path;
+import static java.util.Arrays.asList;
+import static java.util.Arrays.copyOf;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.List;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static mx.avc.sandbox.TestUtils.getFieldValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class HeapSnapshotTest {
+    private static final Logger LOGGER = getLogger(HeapSnapshotTest.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        LOGGER.info("Testing write()/read() - round trip");
+        Path path = folder.newFile().toPath();
+
+        BinaryHeap<Integer> heap = new BinaryHeap<>(TEST_ITEMS);
+        HeapSnapshot.write(heap, ElementCodec.INTEGER, path);
+        BinaryHeap<Integer> restored = HeapSnapshot.read(path,
+                ElementCodec.INTEGER, naturalOrder());
+
+        Object[] expected = getFieldValue(heap, "heap");
+        Object[] actual = getFieldValue(restored, "heap");
+        assertEquals(heap.size(), restored.size());
+        for(int i = 0; i < heap.size(); i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+
+        SORTED_ITEMS.forEach(e -> assertEquals(e, restored.pop().get()));
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test
+    public void testRoundTripEmpty() throws IOException {
+        LOGGER.info("Testing write()/read() - empty");
+        Path path = folder.newFile().toPath();
+
+        HeapSnapshot.write(new BinaryHeap<Long>(), ElementCodec.LONG, path);
+        BinaryHeap<Long> restored = HeapSnapshot.read(path, ElementCodec.LONG,
+                naturalOrder());
+
+        assertTrue(restored.isEmpty());
+        restored.add(1L);
+        assertEquals(1L, (long)restored.pop().get());
+    }
+
+    @Test
+    public void testRoundTripVariableWidth() throws IOException {
+        LOGGER.info("Testing write()/read() - variable width items");
+        Path path = folder.newFile().toPath();
+        List<String> items = asList("pear", "", "apple", "ñandú", "fig");
+        Comparator<String> comparator = Comparator.reverseOrder();
+
+        HeapSnapshot.write(new BinaryHeap<>(comparator, items),
+                ElementCodec.STRING, path);
+        BinaryHeap<String> restored = HeapSnapshot.read(path,
+                ElementCodec.STRING, comparator);
+
+        assertEquals("ñandú", restored.pop().get());
+        assertEquals("pear", restored.pop().get());
+        assertEquals("fig", restored.pop().get());
+        assertEquals("apple", restored.pop().get());
+        assertEquals("", restored.pop().get());
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test
+    public void testOverwrite() throws IOException {
+        LOGGER.info("Testing write() - overwrite a larger snapshot");
+        Path path = folder.newFile().toPath();
+
+        HeapSnapshot.write(new BinaryHeap<>(TEST_ITEMS), ElementCodec.INTEGER,
+                path);
+        HeapSnapshot.write(new BinaryHeap<>(asList(2, 1)),
+                ElementCodec.INTEGER, path);
+        BinaryHeap<Integer> restored = HeapSnapshot.read(path,
+                ElementCodec.INTEGER, naturalOrder());
+
+        assertArrayEquals(new Object[] { 1, 2 },
+                new Object[] { restored.pop().get(), restored.pop().get() });
+        assertTrue(restored.isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalid() throws IOException {
+        LOGGER.info("Testing read() - not a snapshot");
+        Path path = folder.newFile().toPath();
+        write(path, "definitely not a heap".getBytes());
+
+        HeapSnapshot.read(path, ElementCodec.INTEGER, naturalOrder());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadTruncated() throws IOException {
+        LOGGER.info("Testing read() - truncated");
+        Path path = folder.newFile().toPath();
+        HeapSnapshot.write(new BinaryHeap<>(TEST_ITEMS), ElementCodec.INTEGER,
+                path);
+        byte[] bytes = readAllBytes(path);
+        write(path, copyOf(bytes, bytes.length - 2));
+
+        HeapSnapshot.read(path, ElementCodec.INTEGER, naturalOrder());
+    }
+
+    @Test
+    public void testReadCorruptSize() throws IOException {
+        LOGGER.info("Testing read() - corrupt item count");
+        Path path = folder.newFile().toPath();
+        HeapSnapshot.write(new BinaryHeap<>(TEST_ITEMS), ElementCodec.INTEGER,
+                path);
+        byte[] bytes = readAllBytes(path);
+
+        for(int size : asList(-1, Integer.MAX_VALUE, TEST_ITEMS.size() * 4)) {
+            ByteBuffer.wrap(bytes).putInt(2 * Integer.BYTES, size);
+            write(path, bytes);
+            try {
+                HeapSnapshot.read(path, ElementCodec.INTEGER, naturalOrder());
+                fail("expected IOException for size " + size);
+            } catch(IOException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testReadCorruptStringLength() throws IOException {
+        LOGGER.info("Testing read() - corrupt string length");
+        Path path = folder.newFile().toPath();
+        HeapSnapshot.write(new BinaryHeap<>(asList("pear")),
+                ElementCodec.STRING, path);
+        byte[] bytes = readAllBytes(path);
+
+        for(int length : asList(-1, Integer.MAX_VALUE, 5)) {
+            ByteBuffer.wrap(bytes).putInt(3 * Integer.BYTES, length);
+            write(path, bytes);
+            try {
+                HeapSnapshot.read(path, ElementCodec.STRING, naturalOrder());
+                fail("expected IOException for length " + length);
+            } catch(IOException e) {
+            }
+        }
+    }
+}
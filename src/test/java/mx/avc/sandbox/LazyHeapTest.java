@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class LazyHeapTest {
+    private static final Logger LOGGER = getLogger(LazyHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER =
+            Comparator.naturalOrder();
+
+    private static List<Integer> drain(Heap<Integer> heap) {
+        List<Integer> items = new ArrayList<>();
+        while(!heap.isEmpty()) {
+            items.add(heap.pop().get());
+        }
+        return items;
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        LazyHeap<Integer> heap = new LazyHeap<>();
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(() -> 1).isPresent());
+        assertTrue(heap.pop(2).isEmpty());
+    }
+
+    @Test
+    public void testPopAll() {
+        LOGGER.info("Testing pop() - all");
+        LazyHeap<Integer> heap = new LazyHeap<>(TEST_ITEMS);
+
+        assertEquals(TEST_ITEMS.size(), heap.size());
+        assertEquals(SORTED_ITEMS.get(0), heap.peek().get());
+        assertEquals(SORTED_ITEMS, drain(heap));
+    }
+
+    @Test
+    public void testPopDuplicates() {
+        LOGGER.info("Testing pop() - duplicates");
+        Random random = new Random(42);
+        for(int distinct : new int[] { 1, 2, 10, 1000 }) {
+            List<Integer> items = random.ints(5000, 0, distinct).boxed()
+                    .collect(Collectors.toList());
+            List<Integer> sorted = new ArrayList<>(items);
+            Collections.sort(sorted);
+
+            assertEquals(sorted, drain(new LazyHeap<>(items)));
+        }
+    }
+
+    @Test
+    public void testPopSeveral() {
+        LOGGER.info("Testing pop(count)");
+        LazyHeap<Integer> heap = new LazyHeap<>(TEST_ITEMS);
+
+        BinaryHeap<Integer> head = heap.pop(10);
+
+        assertEquals(TEST_ITEMS.size() - 10, heap.size());
+        assertEquals(SORTED_ITEMS.subList(0, 10), drain(head));
+        assertEquals(SORTED_ITEMS.subList(10, SORTED_ITEMS.size()),
+                drain(heap.pop(TEST_ITEMS.size())));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testAddWhilePopping() {
+        LOGGER.info("Testing add()/update() - mixed");
+        Random random = new Random(42);
+        List<Integer> initial = random.ints(1000, 0, 10_000).boxed()
+                .collect(Collectors.toList());
+        LazyHeap<Integer> heap = new LazyHeap<>(initial);
+        BinaryHeap<Integer> expected = new BinaryHeap<>(initial);
+
+        for(int i = 0; i < 5000; i++) {
+            int value = random.nextInt(10_000);
+            switch(random.nextInt(3)) {
+            case 0:
+                heap.add(value);
+                expected.add(value);
+                break;
+            case 1:
+                assertEquals(expected.update(() -> value),
+                        heap.update(() -> value));
+                break;
+            default:
+                assertEquals(expected.peek(), heap.peek());
+                assertEquals(expected.pop(), heap.pop());
+            }
+            assertEquals(expected.size(), heap.size());
+        }
+        heap.addAll(initial);
+        expected.addAll(initial);
+        assertEquals(drain(expected), drain(heap));
+    }
+
+    @Test
+    public void testFirstPageComparisons() {
+        LOGGER.info("Testing pop(count) - comparisons for a prefix");
+        int size = 1 << 16;
+        List<Integer> items = new Random(42).ints(size).boxed()
+                .collect(Collectors.toList());
+        AtomicInteger comparisons = new AtomicInteger();
+        Comparator<Integer> counting_order = (a, b) -> {
+            comparisons.incrementAndGet();
+            return a.compareTo(b);
+        };
+
+        LazyHeap<Integer> heap = new LazyHeap<>(counting_order, items);
+        assertEquals(0, comparisons.get());
+
+        BinaryHeap<Integer> page = heap.pop(20);
+        int lazy = comparisons.get();
+
+        comparisons.set(0);
+        new BinaryHeap<>(counting_order, items).pop(20);
+        int eager = comparisons.get();
+
+        LOGGER.info("first page: lazy {} vs eager {} comparisons", lazy,
+                eager);
+        items.sort(NATURAL_ORDER);
+        assertEquals(items.subList(0, 20), drain(page));
+        assertTrue(lazy < 3 * size);
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        LazyHeap<Integer> heap = new LazyHeap<>(TEST_ITEMS);
+        heap.pop();
+        heap.add(1);
+
+        heap.clear();
+
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.pop().isPresent());
+        heap.addAll(IntStream.range(0, 3).boxed().collect(Collectors.toList()));
+        assertEquals(0, (int)heap.pop().get());
+    }
+}
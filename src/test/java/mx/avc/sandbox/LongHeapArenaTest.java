@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class LongHeapArenaTest {
+    private static final Logger LOGGER = getLogger(LongHeapArenaTest.class);
+
+    @Test
+    public void testOfferTopK() {
+        LOGGER.info("Testing offer() - top K");
+        int heaps = 5_000;
+        int k = 10;
+        LongHeapArena arena = new LongHeapArena(k);
+        long[][] offered = new long[heaps][];
+        for(int heap = 0; heap < heaps; heap++) {
+            assertEquals(heap, arena.newHeap());
+            offered[heap] = new Random(heap).longs(heap % 30).toArray();
+        }
+
+        // interleave the heaps, like keyed aggregation does
+        for(int i = 0; i < 30; i++) {
+            for(int heap = 0; heap < heaps; heap++) {
+                if(i < offered[heap].length) {
+                    arena.offer(heap, offered[heap][i]);
+                }
+            }
+        }
+
+        for(int heap = 0; heap < heaps; heap++) {
+            long[] expected = offered[heap].clone();
+            Arrays.sort(expected);
+            expected = Arrays.copyOfRange(expected,
+                    Math.max(0, expected.length - k), expected.length);
+            assertEquals(expected.length, arena.size(heap));
+            if(expected.length > 0) {
+                assertEquals(expected[0], arena.peek(heap).getAsLong());
+            }
+            assertArrayEquals(expected, arena.drain(heap));
+            assertEquals(0, arena.size(heap));
+        }
+    }
+
+    @Test
+    public void testPop() {
+        LOGGER.info("Testing pop()");
+        LongHeapArena arena = new LongHeapArena(4, 1);
+        int heap = arena.newHeap();
+        for(long key : new long[] { 5, -1, 7, 3, 9, 0 }) {
+            arena.offer(heap, key);
+        }
+
+        assertFalse(arena.offer(heap, 3));
+        assertTrue(arena.offer(heap, 6));
+        assertEquals(5, arena.pop(heap).getAsLong());
+        assertEquals(6, arena.pop(heap).getAsLong());
+        assertEquals(7, arena.pop(heap).getAsLong());
+        assertEquals(9, arena.pop(heap).getAsLong());
+        assertFalse(arena.pop(heap).isPresent());
+        assertFalse(arena.peek(heap).isPresent());
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        LongHeapArena arena = new LongHeapArena(3);
+        int heap = arena.newHeap();
+        arena.offer(heap, 1);
+
+        arena.clear();
+
+        assertEquals(0, arena.heapCount());
+        assertEquals(heap, arena.newHeap());
+        assertEquals(0, arena.size(heap));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInvalidHeap() {
+        LOGGER.info("Testing offer() - invalid heap");
+        LongHeapArena arena = new LongHeapArena(3);
+
+        arena.offer(0, 1);
+    }
+}
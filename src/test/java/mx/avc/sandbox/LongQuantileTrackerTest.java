@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class LongQuantileTrackerTest {
+    private static final Logger LOGGER =
+            getLogger(LongQuantileTrackerTest.class);
+
+    private static final double[] QUANTILES = { 0.01, 0.25, 0.5, 0.9, 1 };
+
+    @Test
+    public void testCountWindow() {
+        LOGGER.info("Testing expireOldest() - count window");
+        Random random = new Random(42);
+        for(double quantile : QUANTILES) {
+            for(int window_size : new int[] { 1, 3, 64, 200 }) {
+                LongQuantileTracker tracker =
+                        new LongQuantileTracker(quantile);
+                long[] keys = new long[3000];
+                for(int i = 0; i < keys.length; i++) {
+                    keys[i] = random.nextInt(100) - 50;
+                    tracker.add(keys[i]);
+                    if(i >= window_size) {
+                        tracker.expireOldest(1);
+                    }
+
+                    long[] window = Arrays.copyOfRange(keys,
+                            Math.max(0, i + 1 - window_size), i + 1);
+                    Arrays.sort(window);
+                    assertEquals(window.length, tracker.size());
+                    assertEquals(window[QuantileTracker.target(quantile,
+                            window.length) - 1],
+                            tracker.quantile().getAsLong());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTimeWindow() {
+        LOGGER.info("Testing expireBefore() - time window");
+        Random random = new Random(42);
+        LongQuantileTracker tracker = new LongQuantileTracker(0.5);
+        long[] keys = new long[5000];
+        long[] timestamps = new long[keys.length];
+        int oldest = 0;
+        long now = 0;
+        for(int i = 0; i < keys.length; i++) {
+            now += random.nextInt(3);
+            keys[i] = random.nextLong();
+            timestamps[i] = now;
+            tracker.add(keys[i], now);
+
+            if(i % 97 == 0) {
+                long cutoff = now - random.nextInt(40);
+                tracker.expireBefore(cutoff);
+                while(timestamps[oldest] < cutoff) {
+                    oldest++;
+                }
+            }
+
+            long[] window = Arrays.copyOfRange(keys, oldest, i + 1);
+            Arrays.sort(window);
+            assertEquals(window.length, tracker.size());
+            assertEquals(window[(window.length + 1) / 2 - 1],
+                    tracker.quantile().getAsLong());
+        }
+
+        tracker.expireBefore(now + 1);
+        assertTrue(tracker.isEmpty());
+        assertFalse(tracker.quantile().isPresent());
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        LongQuantileTracker tracker = new LongQuantileTracker(0.5);
+        for(int i = 0; i < 100; i++) {
+            tracker.add(i);
+        }
+        tracker.expireOldest(10);
+
+        tracker.clear();
+
+        assertTrue(tracker.isEmpty());
+        tracker.add(3);
+        tracker.add(1);
+        tracker.add(2);
+        assertEquals(2, tracker.quantile().getAsLong());
+        tracker.expireOldest(1);
+        assertEquals(1, tracker.quantile().getAsLong());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.function.Function;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class MultisetHeapTest {
+    private static final Logger LOGGER = getLogger(MultisetHeapTest.class);
+
+    private static final int LEVELS = 4;
+
+    private static MultisetHeap<Integer, Integer> levelHeap() {
+        return new MultisetHeap<>(i -> i % LEVELS);
+    }
+
+    private static List<Integer> expectedOrder() {
+        List<Integer> expected = new ArrayList<>();
+        for(int level = 0; level < LEVELS; level++) {
+            for(Integer item : TEST_ITEMS) {
+                if(item % LEVELS == level) {
+                    expected.add(item);
+                }
+            }
+        }
+        return expected;
+    }
+
+    private static List<Integer> drain(Heap<Integer> heap) {
+        List<Integer> items = new ArrayList<>();
+        while(!heap.isEmpty()) {
+            items.add(heap.pop().get());
+        }
+        return items;
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        MultisetHeap<Integer, Integer> heap = levelHeap();
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(() -> 1).isPresent());
+        assertTrue(heap.pop(3).isEmpty());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testDistinctKeys() {
+        LOGGER.info("Testing pop() - distinct keys");
+        MultisetHeap<Integer, Integer> heap =
+                new MultisetHeap<>(i -> i, Integer::compare, TEST_ITEMS);
+
+        assertEquals(TEST_ITEMS.size(), heap.distinctKeys());
+        assertEquals(SORTED_ITEMS, drain(heap));
+        assertEquals(0, heap.distinctKeys());
+    }
+
+    @Test
+    public void testFifoWithinKey() {
+        LOGGER.info("Testing pop() - FIFO within a key");
+        MultisetHeap<Integer, Integer> heap = levelHeap();
+        heap.addAll(TEST_ITEMS);
+
+        assertEquals(LEVELS, heap.distinctKeys());
+        assertEquals(TEST_ITEMS.size(), heap.size());
+        assertEquals(expectedOrder(), drain(heap));
+    }
+
+    @Test
+    public void testPopSeveral() {
+        LOGGER.info("Testing pop(int)");
+        List<Integer> expected = expectedOrder();
+        for(int count = 0; count <= TEST_ITEMS.size() + 1; count++) {
+            MultisetHeap<Integer, Integer> heap = levelHeap();
+            heap.addAll(TEST_ITEMS);
+
+            MultisetHeap<Integer, Integer> head = heap.pop(count);
+            int popped = Math.min(count, TEST_ITEMS.size());
+            assertEquals(popped, head.size());
+            assertEquals(TEST_ITEMS.size() - popped, heap.size());
+
+            List<Integer> items = drain(head);
+            items.addAll(drain(heap));
+            assertEquals(expected, items);
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        LOGGER.info("Testing update()");
+        MultisetHeap<Integer, Integer> heap = levelHeap();
+        heap.addAll(asList(4, 8, 1, 2));
+
+        assertEquals(4, (int)heap.update(() -> 12).get());
+        assertEquals(asList(8, 12, 1, 2), drain(heap));
+    }
+
+    @Test
+    public void testUpdateSupplierThrows() {
+        LOGGER.info("Testing update() - supplier throws");
+        MultisetHeap<Integer, Integer> heap = levelHeap();
+        heap.addAll(asList(4, 1));
+
+        try {
+            heap.update(() -> {
+                throw new IllegalStateException();
+            });
+            fail("expected IllegalStateException");
+        } catch(IllegalStateException e) {
+        }
+
+        assertEquals(2, heap.size());
+        assertEquals(asList(4, 1), drain(heap));
+    }
+
+    @Test
+    public void testKeysEqualByComparator() {
+        LOGGER.info("Testing add() - keys equal by the comparator only");
+        MultisetHeap<String, String> heap = new MultisetHeap<>(
+                Function.identity(), String.CASE_INSENSITIVE_ORDER);
+        heap.addAll(asList("b", "A", "B", "a"));
+
+        assertEquals(2, heap.distinctKeys());
+        assertEquals("A", heap.pop().get());
+        assertEquals("a", heap.pop().get());
+        assertEquals("b", heap.pop().get());
+        assertEquals("B", heap.pop().get());
+        assertEquals(0, heap.distinctKeys());
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        MultisetHeap<Integer, Integer> heap = levelHeap();
+        heap.addAll(TEST_ITEMS);
+
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        assertEquals(0, heap.distinctKeys());
+        heap.add(7);
+        assertEquals(7, (int)heap.pop().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPopNegative() {
+        LOGGER.info("Testing pop(int) - negative");
+        levelHeap().pop(-1);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.io.IOException;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import static mx.avc.sandbox.TestUtils.allocatedBytes;
+import static mx.avc.sandbox.TestUtils.isAllocationAccountingSupported;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs a workload matrix over {@link BinaryHeap} and compares the throughput
+ * against a stored baseline.
+ * <p>
+ * Every combination of size, input distribution, operation mix and comparator
+ * cost is measured, along with the bytes allocated per operation, and the
+ * results are written as JSON to {@code target/performance/results.json}. The
+ * test fails when the throughput of any workload drops more than the
+ * threshold below the baseline, by default the one committed in
+ * {@code src/test/resources/performance-baseline.json}. The suite only runs
+ * with the {@code performance-regression} profile:
+ * <pre>
+ * mvn test -Pperformance-regression [-Dperformance.baseline=file]
+ *     [-Dperformance.threshold=0.2] [-Dperformance.update-baseline=true]
+ * </pre>
+ * With {@code performance.update-baseline} the results replace the baseline.
+ * @author alexv
+ */
+public class PerformanceRegressionTest {
+    private static final Logger LOGGER =
+            getLogger(PerformanceRegressionTest.class);
+
+    private static final int[] SIZES = new int[] { 1 << 10, 1 << 14, 1 << 18 };
+
+    private static final long WARMUP_NANOS = 100_000_000L;
+
+    private static final long MEASURE_NANOS = 300_000_000L;
+
+    /**
+     * The extra measurements of a workload below its baseline.
+     */
+    private static final int RETRIES = 2;
+
+    private static final Path RESULTS =
+            Paths.get("target", "performance", "results.json");
+
+    private static final Pattern RESULT_PATTERN = Pattern.compile(
+            "\"name\"\\s*:\\s*\"([^\"]+)\"\\s*,\\s*"
+            + "\"opsPerSecond\"\\s*:\\s*([-+.0-9eE]+)");
+
+    enum Distribution {
+        RANDOM {
+            @Override
+            Integer[] values(int size, Random random) {
+                return fill(size, i -> random.nextInt());
+            }
+        },
+        SORTED {
+            @Override
+            Integer[] values(int size, Random random) {
+                return fill(size, i -> i);
+            }
+        },
+        REVERSE {
+            @Override
+            Integer[] values(int size, Random random) {
+                return fill(size, i -> size - i);
+            }
+        },
+        SAWTOOTH {
+            @Override
+            Integer[] values(int size, Random random) {
+                return fill(size, i -> i % 64);
+            }
+        },
+        DUPLICATES {
+            @Override
+            Integer[] values(int size, Random random) {
+                return fill(size, i -> random.nextInt(8));
+            }
+        };
+
+        abstract Integer[] values(int size, Random random);
+
+        private static Integer[] fill(int size, IntUnaryOperator value) {
+            Integer[] values = new Integer[size];
+            Arrays.setAll(values, value::applyAsInt);
+            return values;
+        }
+    }
+
+    enum ComparatorCost {
+        CHEAP(Comparator.<Integer>naturalOrder()),
+        EXPENSIVE(ComparatorCost::compareBitwise);
+
+        private final Comparator<Integer> comparator;
+
+        ComparatorCost(Comparator<Integer> comparator) {
+            this.comparator = comparator;
+        }
+
+        /**
+         * Compares one bit at a time, like a string comparison over keys
+         * with a long common prefix.
+         */
+        private static int compareBitwise(Integer a, Integer b) {
+            int bits_a = a ^ Integer.MIN_VALUE;
+            int bits_b = b ^ Integer.MIN_VALUE;
+            int result = 0;
+            for(int bit = Integer.SIZE - 1; bit >= 0; bit--) {
+                if(result == 0) {
+                    result = (bits_a >>> bit & 1) - (bits_b >>> bit & 1);
+                }
+            }
+            return result;
+        }
+    }
+
+    enum OpMix {
+        /**
+         * Adds every item one by one, then pops a quarter of them.
+         */
+        INSERT_HEAVY {
+            @Override
+            long run(Integer[] values, Comparator<Integer> c) {
+                BinaryHeap<Integer> heap = new BinaryHeap<>(c);
+                for(Integer value : values) {
+                    heap.add(value);
+                }
+                for(int i = values.length / 4; i > 0; i--) {
+                    heap.pop();
+                }
+                return values.length + values.length / 4;
+            }
+        },
+        /**
+         * Builds the heap at once, then pops every item.
+         */
+        POP_HEAVY {
+            @Override
+            long run(Integer[] values, Comparator<Integer> c) {
+                BinaryHeap<Integer> heap = new BinaryHeap<>(c,
+                        Arrays.asList(values));
+                while(!heap.isEmpty()) {
+                    heap.pop();
+                }
+                return 2L * values.length;
+            }
+        },
+        /**
+         * Builds the heap at once, then replaces the top once per item.
+         */
+        UPDATE_HEAVY {
+            @Override
+            long run(Integer[] values, Comparator<Integer> c) {
+                BinaryHeap<Integer> heap = new BinaryHeap<>(c,
+                        Arrays.asList(values));
+                for(Integer value : values) {
+                    heap.update(() -> value);
+                }
+                return 2L * values.length;
+            }
+        },
+        /**
+         * Adds the items in two bulks, then pops them in eight batches.
+         */
+        BULK {
+            @Override
+            long run(Integer[] values, Comparator<Integer> c) {
+                int half = values.length / 2;
+                BinaryHeap<Integer> heap = new BinaryHeap<>(c,
+                        Arrays.asList(values).subList(0, half));
+                heap.addAll(Arrays.asList(values).subList(half,
+                        values.length));
+                int batch = Math.max(1, values.length / 8);
+                while(!heap.isEmpty()) {
+                    heap.pop(batch);
+                }
+                return 2L * values.length;
+            }
+        };
+
+        /**
+         * Runs the workload once.
+         * @return the amount of operations performed
+         */
+        abstract long run(Integer[] values, Comparator<Integer> c);
+    }
+
+    static final class Result {
+
+        final String name;
+
+        final double opsPerSecond;
+
+        final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    /**
+     * Runs a workload repeatedly for a while, keeping the best round and the
+     * mean allocation per operation; the allocation is NaN where the JVM
+     * cannot account it, which doesn't affect the throughput gate.
+     */
+    static Result measure(String name, OpMix mix, Integer[] values,
+            Comparator<Integer> c) {
+        long deadline = System.nanoTime() + WARMUP_NANOS;
+        while(System.nanoTime() < deadline) {
+            mix.run(values, c);
+        }
+
+        boolean accounting = isAllocationAccountingSupported();
+        double best = 0;
+        long total_ops = 0;
+        long allocated = accounting ? allocatedBytes() : 0;
+        long start = System.nanoTime();
+        deadline = start + MEASURE_NANOS;
+        do {
+            long round = System.nanoTime();
+            long ops = mix.run(values, c);
+            long elapsed = Math.max(1, System.nanoTime() - round);
+            best = Math.max(best, ops * 1e9 / elapsed);
+            total_ops += ops;
+        } while(System.nanoTime() < deadline);
+        if(!accounting) {
+            return new Result(name, best, Double.NaN);
+        }
+        allocated = allocatedBytes() - allocated;
+        return new Result(name, best, (double)allocated / total_ops);
+    }
+
+    static void write(Path file, List<Result> results) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"results\": [\n");
+        for(int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            String bytes_per_op = Double.isNaN(result.bytesPerOp) ? "null"
+                    : String.format(Locale.ROOT, "%.2f", result.bytesPerOp);
+            json.append(String.format(Locale.ROOT,
+                    "    { \"name\": \"%s\", \"opsPerSecond\": %.1f,"
+                    + " \"bytesPerOp\": %s }%s%n",
+                    result.name, result.opsPerSecond, bytes_per_op,
+                    i + 1 < results.size() ? "," : ""));
+        }
+        json.append("  ]\n}\n");
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, json.toString().getBytes(UTF_8));
+    }
+
+    static Map<String, Double> read(Path file) throws IOException {
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        Matcher matcher = RESULT_PATTERN.matcher(
+                new String(Files.readAllBytes(file), UTF_8));
+        while(matcher.find()) {
+            baseline.put(matcher.group(1),
+                    Double.parseDouble(matcher.group(2)));
+        }
+        return baseline;
+    }
+
+    @Test
+    public void testWorkloadMatrix() throws IOException {
+        assumeTrue(Boolean.getBoolean("performance.regression"));
+        LOGGER.info("Testing BinaryHeap - performance regression");
+
+        List<Result> results = new ArrayList<>();
+        Map<String, Supplier<Result>> workloads = new LinkedHashMap<>();
+        for(int size : SIZES) {
+            for(Distribution distribution : Distribution.values()) {
+                Integer[] values = distribution.values(size, new Random(size));
+                for(ComparatorCost cost : ComparatorCost.values()) {
+                    for(OpMix mix : OpMix.values()) {
+                        String name = String.format("%s/%s/%s/%d", mix,
+                                distribution, cost, size)
+                                .toLowerCase(Locale.ROOT);
+                        Supplier<Result> workload = () -> measure(name, mix,
+                                values, cost.comparator);
+                        workloads.put(name, workload);
+                        Result result = workload.get();
+                        LOGGER.info("{}: {} ops/s, {} bytes/op", name,
+                                String.format("%.0f", result.opsPerSecond),
+                                String.format("%.2f", result.bytesPerOp));
+                        results.add(result);
+                    }
+                }
+            }
+        }
+        write(RESULTS, results);
+
+        String baseline_file = System.getProperty("performance.baseline", "");
+        if(baseline_file.isEmpty()) {
+            return;
+        }
+        Path baseline_path = Paths.get(baseline_file);
+        if(Boolean.getBoolean("performance.update-baseline")) {
+            write(baseline_path, results);
+            return;
+        }
+        assertTrue("no baseline at " + baseline_path
+                + ", record one with -Dperformance.update-baseline=true",
+                Files.exists(baseline_path));
+
+        double threshold = Double.parseDouble(
+                System.getProperty("performance.threshold", "0.2"));
+        Map<String, Double> baseline = read(baseline_path);
+        List<String> regressions = new ArrayList<>();
+        for(Result result : results) {
+            Double expected = baseline.get(result.name);
+            if(expected == null) {
+                continue;
+            }
+            // a drop is measured again before it counts, to rule out noise
+            double ops = result.opsPerSecond;
+            double limit = expected * (1 - threshold);
+            for(int retry = 0; ops < limit && retry < RETRIES; retry++) {
+                ops = Math.max(ops,
+                        workloads.get(result.name).get().opsPerSecond);
+            }
+            if(ops < limit) {
+                regressions.add(String.format("%s: %.0f ops/s, baseline %.0f",
+                        result.name, ops, expected));
+            }
+        }
+        regressions.forEach(LOGGER::error);
+        assertTrue("throughput regressions: " + regressions,
+                regressions.isEmpty());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class PersistentHeapTest {
+    private static final Logger LOGGER = getLogger(PersistentHeapTest.class);
+
+    private static List<Integer> drain(PersistentHeap<Integer> heap) {
+        List<Integer> items = new ArrayList<>();
+        while(!heap.isEmpty()) {
+            items.add(heap.peek().get());
+            heap = heap.pop();
+        }
+        return items;
+    }
+
+    @Test
+    public void testEmpty() {
+        LOGGER.info("Testing PersistentHeap - empty");
+        PersistentHeap<Integer> heap = PersistentHeap.empty();
+
+        assertFalse(heap.peek().isPresent());
+        assertSame(heap, heap.pop());
+        assertSame(heap, heap.update(1));
+        assertSame(heap, heap.addAll(Collections.emptyList()));
+        assertEquals(0, heap.size());
+        assertFalse(heap.iterator().hasNext());
+    }
+
+    @Test
+    public void testAddPopAll() {
+        LOGGER.info("Testing add()/pop() - all");
+        PersistentHeap<Integer> heap = PersistentHeap.empty();
+        for(Integer item : TEST_ITEMS) {
+            heap = heap.add(item);
+        }
+
+        assertEquals(TEST_ITEMS.size(), heap.size());
+        assertEquals(SORTED_ITEMS, drain(heap));
+    }
+
+    @Test
+    public void testConstructComprehensive() {
+        LOGGER.info("Testing of() - comprehensive");
+        for(int length = 0; length <= TEST_ITEMS.size(); length++) {
+            List<Integer> items = TEST_ITEMS.subList(0, length);
+            PersistentHeap<Integer> heap = PersistentHeap.of(items);
+
+            List<Integer> expected = new ArrayList<>(items);
+            Collections.sort(expected);
+            assertEquals(length, heap.size());
+            assertEquals(expected, drain(heap));
+
+            List<Integer> iterated = new ArrayList<>();
+            heap.forEach(iterated::add);
+            Collections.sort(iterated);
+            assertEquals(expected, iterated);
+        }
+    }
+
+    @Test
+    public void testVersions() {
+        LOGGER.info("Testing PersistentHeap - old versions unchanged");
+        PersistentHeap<Integer> original = PersistentHeap.of(TEST_ITEMS);
+
+        PersistentHeap<Integer> popped = original.pop().pop();
+        PersistentHeap<Integer> added = original.add(0);
+        PersistentHeap<Integer> updated = original.update(100);
+
+        assertEquals(SORTED_ITEMS, drain(original));
+        assertEquals(SORTED_ITEMS.subList(2, SORTED_ITEMS.size()),
+                drain(popped));
+        assertEquals(0, (int)added.peek().get());
+        assertEquals(SORTED_ITEMS.get(1), updated.peek().get());
+        assertEquals(TEST_ITEMS.size(), updated.size());
+    }
+
+    @Test
+    public void testMerge() {
+        LOGGER.info("Testing merge()");
+        PersistentHeap<Integer> low = PersistentHeap.of(
+                TEST_ITEMS.subList(0, 30));
+        PersistentHeap<Integer> high = PersistentHeap.of(
+                TEST_ITEMS.subList(30, TEST_ITEMS.size()));
+
+        assertEquals(SORTED_ITEMS, drain(low.merge(high)));
+        assertEquals(asList(1, 2, 4), drain(PersistentHeap.<Integer>empty()
+                .merge(PersistentHeap.of(asList(4, 1, 2)))));
+    }
+
+    @Test
+    public void testSnapshotReads() throws Exception {
+        LOGGER.info("Testing PersistentHeap - concurrent snapshot reads");
+        AtomicReference<PersistentHeap<Integer>> current =
+                new AtomicReference<>(PersistentHeap.empty());
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            while(running.get()) {
+                PersistentHeap<Integer> snapshot = current.get();
+                List<Integer> items = drain(snapshot);
+                assertEquals(snapshot.size(), items.size());
+                for(int i = 1; i < items.size(); i++) {
+                    assertTrue(items.get(i - 1) <= items.get(i));
+                }
+            }
+        });
+
+        for(int i = 0; i < 2000; i++) {
+            current.set(current.get().add(i % 97));
+            if(i % 3 == 0) {
+                current.set(current.get().pop());
+            }
+        }
+        running.set(false);
+        reader.get(10, SECONDS);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class PriorityExecutorTest {
+    private static final Logger LOGGER = getLogger(PriorityExecutorTest.class);
+
+    private static final long AGING = 1000;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private final List<Integer> executed = new CopyOnWriteArrayList<>();
+
+    private PriorityExecutor executor;
+
+    @After
+    public void teardown() throws InterruptedException {
+        gate.countDown();
+        if(executor != null) {
+            executor.shutdownNow();
+            assertTrue(executor.awaitTermination(5, SECONDS));
+        }
+    }
+
+    private PriorityExecutor start(int batchSize) throws Exception {
+        return start(batchSize, clock::get);
+    }
+
+    private PriorityExecutor start(int batchSize, LongSupplier time)
+            throws Exception {
+        executor = new PriorityExecutor(1, Executors.defaultThreadFactory(),
+                batchSize, AGING, time);
+
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch(InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }, Integer.MIN_VALUE);
+        assertTrue(started.await(5, SECONDS));
+        return executor;
+    }
+
+    private void record(int priority) {
+        executor.execute(() -> executed.add(priority), priority);
+    }
+
+    @Test(timeout = 10000)
+    public void testPriorityOrder() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - priority order");
+        start(1);
+
+        for(int priority : asList(5, 1, 3, 2, 4)) {
+            record(priority);
+        }
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertEquals(asList(1, 2, 3, 4, 5), executed);
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchedPriorityOrder() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - batched priority order");
+        start(4);
+
+        for(int priority : asList(9, 5, 1, 8, 3, 7, 2, 6, 4)) {
+            record(priority);
+        }
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertEquals(asList(1, 2, 3, 4, 5, 6, 7, 8, 9), executed);
+    }
+
+    @Test(timeout = 10000)
+    public void testAging() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - aging");
+        start(1);
+
+        record(5);
+        clock.set(3 * AGING);
+        record(3);
+        clock.set(10 * AGING);
+        record(0);
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertEquals(asList(5, 3, 0), executed);
+    }
+
+    @Test(timeout = 10000)
+    public void testDeadlineTieBreak() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - deadline tie break");
+        start(1);
+
+        executor.submit(() -> executed.add(1), 0, 300);
+        executor.submit(() -> executed.add(2), 0, 100);
+        executor.submit(() -> executed.add(3), 0, 200);
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertEquals(asList(2, 3, 1), executed);
+    }
+
+    @Test(timeout = 10000)
+    public void testDeadlinePromotion() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - deadline promotion");
+        start(1, System::nanoTime);
+
+        record(0);
+        long now = System.nanoTime();
+        executor.submit(() -> executed.add(1), 5, now - SECONDS.toNanos(1));
+        executor.submit(() -> executed.add(2), 5, now + SECONDS.toNanos(60));
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertEquals(asList(1, 0, 2), executed);
+    }
+
+    @Test(timeout = 30000)
+    public void testShutdownWhileSubmitting() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - shutdown while submitting");
+        for(int round = 0; round < 100; round++) {
+            executor = new PriorityExecutor(2,
+                    Executors.defaultThreadFactory());
+            List<Future<?>> accepted = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                try {
+                    while(true) {
+                        accepted.add(executor.submit(() -> { }));
+                    }
+                } catch(RejectedExecutionException e) {
+                    // shut down
+                }
+            });
+            submitter.start();
+            Thread.sleep(1);
+
+            executor.shutdown();
+            submitter.join();
+            assertTrue(executor.awaitTermination(5, SECONDS));
+            assertTrue(accepted.stream().allMatch(Future::isDone));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentSubmitters() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - concurrent submitters");
+        executor = new PriorityExecutor(3, Executors.defaultThreadFactory(),
+                8, 1, SECONDS);
+        AtomicInteger ran = new AtomicInteger();
+
+        List<Thread> submitters = new ArrayList<>();
+        for(int i = 0; i < 4; i++) {
+            int priority = i;
+            submitters.add(new Thread(() -> {
+                for(int task = 0; task < 10_000; task++) {
+                    executor.execute(ran::incrementAndGet, priority);
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for(Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, SECONDS));
+        assertEquals(40_000, ran.get());
+        assertEquals(0, executor.getQueueSize());
+    }
+
+    @Test(timeout = 10000)
+    public void testSubmit() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - submit");
+        executor = new PriorityExecutor(2, Executors.defaultThreadFactory());
+
+        Future<Integer> result = executor.submit(() -> 42);
+
+        assertEquals(42, (int)result.get(5, SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testLatencyStats() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - latency stats");
+        start(1);
+
+        record(1);
+        record(1);
+        record(2);
+        clock.addAndGet(500);
+        gate.countDown();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        Map<Integer, PriorityExecutor.LatencyStats> stats =
+                executor.getLatencyStats();
+        assertEquals(asList(Integer.MIN_VALUE, 1, 2),
+                asList(stats.keySet().toArray()));
+        assertEquals(2, stats.get(1).getCount());
+        assertEquals(500, stats.get(1).getMeanNanos());
+        assertEquals(500, stats.get(2).getMaxNanos());
+    }
+
+    @Test(timeout = 10000)
+    public void testShutdownNow() throws Exception {
+        LOGGER.info("Testing PriorityExecutor - shutdownNow");
+        start(1);
+
+        record(1);
+        record(2);
+
+        assertEquals(2, executor.shutdownNow().size());
+        assertTrue(executor.awaitTermination(5, SECONDS));
+        assertTrue(executed.isEmpty());
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testRejectAfterShutdown() {
+        LOGGER.info("Testing PriorityExecutor - reject after shutdown");
+        executor = new PriorityExecutor(1, Executors.defaultThreadFactory());
+        executor.shutdown();
+
+        executor.execute(() -> { });
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class QuantileTrackerTest {
+    private static final Logger LOGGER =
+            getLogger(QuantileTrackerTest.class);
+
+    private static final Comparator<Integer> REVERSE_ORDER =
+            Comparator.reverseOrder();
+
+    private static final double[] QUANTILES = { 0.01, 0.25, 0.5, 0.9, 1 };
+
+    private static Optional<Integer> expected(ArrayDeque<Integer> window,
+            double quantile) {
+        if(window.isEmpty()) {
+            return Optional.empty();
+        }
+        List<Integer> sorted = new ArrayList<>(window);
+        Collections.sort(sorted);
+        int rank = QuantileTracker.target(quantile, sorted.size());
+        return Optional.of(sorted.get(rank - 1));
+    }
+
+    @Test
+    public void testTarget() {
+        LOGGER.info("Testing target()");
+        assertEquals(9, QuantileTracker.target(0.9, 10));
+        assertEquals(5, QuantileTracker.target(0.5, 10));
+        assertEquals(6, QuantileTracker.target(0.5, 11));
+        assertEquals(1, QuantileTracker.target(0.01, 3));
+        assertEquals(3, QuantileTracker.target(1, 3));
+        assertEquals(0, QuantileTracker.target(0.5, 0));
+    }
+
+    @Test
+    public void testMedianGrowing() {
+        LOGGER.info("Testing quantile() - median, no expiry");
+        QuantileTracker<Integer> tracker = new QuantileTracker<>(0.5);
+        assertFalse(tracker.quantile().isPresent());
+
+        for(Integer item : TEST_ITEMS) {
+            tracker.add(item);
+        }
+
+        assertEquals(TEST_ITEMS.size(), tracker.size());
+        assertEquals(SORTED_ITEMS.get(32), tracker.quantile().get());
+    }
+
+    @Test
+    public void testCountWindow() {
+        LOGGER.info("Testing expireOldest() - count window");
+        Random random = new Random(42);
+        for(double quantile : QUANTILES) {
+            for(int window_size : new int[] { 1, 2, 7, 100 }) {
+                QuantileTracker<Integer> tracker =
+                        new QuantileTracker<>(quantile);
+                ArrayDeque<Integer> window = new ArrayDeque<>();
+                for(int i = 0; i < 3000; i++) {
+                    int item = random.nextInt(50);
+                    tracker.add(item);
+                    window.addLast(item);
+                    if(window.size() > window_size) {
+                        tracker.expireOldest(1);
+                        window.removeFirst();
+                    }
+                    assertEquals(window.size(), tracker.size());
+                    assertEquals(expected(window, quantile),
+                            tracker.quantile());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTimeWindow() {
+        LOGGER.info("Testing expireBefore() - time window");
+        Random random = new Random(42);
+        QuantileTracker<Integer> tracker = new QuantileTracker<>(
+                REVERSE_ORDER, 0.9);
+        ArrayDeque<Integer> window = new ArrayDeque<>();
+        ArrayDeque<Long> timestamps = new ArrayDeque<>();
+        long now = 0;
+        for(int i = 0; i < 5000; i++) {
+            now += random.nextInt(3);
+            int item = random.nextInt(1000);
+            tracker.add(item, now);
+            window.addLast(item);
+            timestamps.addLast(now);
+
+            // bursts of expiry leave many expired items in the heaps
+            if(i % 97 == 0) {
+                long cutoff = now - random.nextInt(40);
+                tracker.expireBefore(cutoff);
+                while(!timestamps.isEmpty()
+                        && timestamps.peekFirst() < cutoff) {
+                    timestamps.removeFirst();
+                    window.removeFirst();
+                }
+            }
+
+            assertEquals(window.size(), tracker.size());
+            List<Integer> sorted = new ArrayList<>(window);
+            sorted.sort(REVERSE_ORDER);
+            assertEquals(sorted.get(QuantileTracker.target(0.9,
+                    sorted.size()) - 1), tracker.quantile().get());
+        }
+
+        tracker.expireBefore(now + 1);
+        assertTrue(tracker.isEmpty());
+        assertFalse(tracker.quantile().isPresent());
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        QuantileTracker<Integer> tracker = new QuantileTracker<>(0.5);
+        TEST_ITEMS.forEach(tracker::add);
+        tracker.expireOldest(10);
+
+        tracker.clear();
+
+        assertTrue(tracker.isEmpty());
+        tracker.add(3);
+        tracker.add(1);
+        tracker.add(2);
+        assertEquals(2, (int)tracker.quantile().get());
+        tracker.expireOldest(1);
+        assertEquals(1, (int)tracker.quantile().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuantile() {
+        LOGGER.info("Testing QuantileTracker - invalid quantile");
+        new QuantileTracker<Integer>(0);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static mx.avc.sandbox.TestUtils.getFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class RelaxedHeapTest {
+    private static final Logger LOGGER = getLogger(RelaxedHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER =
+            Comparator.naturalOrder();
+
+    /**
+     * Adds the values from several threads, so they are spread over the
+     * shards.
+     */
+    static void spread(Heap<Integer> heap, List<Integer> values, int threads)
+            throws Exception {
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            int first = t;
+            producers.add(CompletableFuture.runAsync(() -> {
+                for(int i = first; i < values.size(); i += threads) {
+                    heap.add(values.get(i));
+                }
+            }, runnable -> new Thread(runnable).start()));
+        }
+        for(CompletableFuture<Void> producer : producers) {
+            producer.get(10, SECONDS);
+        }
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(NATURAL_ORDER, 4);
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(() -> 1).isPresent());
+        assertTrue(heap.pop(3).isEmpty());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testSingleShardIsExact() {
+        LOGGER.info("Testing pop() - single shard");
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(NATURAL_ORDER, 1);
+        heap.addAll(TEST_ITEMS);
+
+        SORTED_ITEMS.forEach(e -> {
+            assertEquals(e, heap.peek().get());
+            assertEquals(e, heap.pop().get());
+        });
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testPopAllSpread() throws Exception {
+        LOGGER.info("Testing pop() - items spread over shards");
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(NATURAL_ORDER, 8);
+        spread(heap, TEST_ITEMS, 8);
+        assertEquals(TEST_ITEMS.size(), heap.size());
+        assertEquals(SORTED_ITEMS.get(0), heap.peek().get());
+
+        List<Integer> popped = new ArrayList<>();
+        BinaryHeap<Integer> head = heap.pop(10);
+        assertEquals(10, head.size());
+        while(!head.isEmpty()) {
+            popped.add(head.pop().get());
+        }
+        while(!heap.isEmpty()) {
+            popped.add(heap.pop().get());
+        }
+        Collections.sort(popped);
+        assertEquals(SORTED_ITEMS, popped);
+    }
+
+    @Test
+    public void testSingleProducerSpreads() {
+        LOGGER.info("Testing add() - single producer");
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(NATURAL_ORDER, 8);
+        for(int i = 0; i < 1000; i++) {
+            heap.add(i);
+        }
+
+        Object[] shards = getFieldValue(heap, "shards");
+        for(Object shard : shards) {
+            BinaryHeap<?> shard_heap = getFieldValue(shard, "heap");
+            assertTrue(shard_heap.size() > 0);
+        }
+        // the smallest items are spread too, so a pop is close to the top
+        assertTrue(heap.pop().get() < 8 * 8);
+    }
+
+    @Test(timeout = 20000)
+    public void testConcurrentProducersConsumers() throws Exception {
+        LOGGER.info("Testing RelaxedHeap - concurrent producers/consumers");
+        RelaxedHeap<Integer> heap = new RelaxedHeap<>(NATURAL_ORDER, 8);
+        ConcurrentLinkedQueue<Integer> popped = new ConcurrentLinkedQueue<>();
+        int threads = 4;
+        int items = 20000;
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            int first = t;
+            workers.add(CompletableFuture.runAsync(() -> {
+                for(int i = first; i < items; i += threads) {
+                    heap.add(i);
+                    if(i % 2 == 0) {
+                        heap.pop().ifPresent(popped::add);
+                    }
+                }
+            }, runnable -> new Thread(runnable).start()));
+        }
+        for(CompletableFuture<Void> worker : workers) {
+            worker.get(10, SECONDS);
+        }
+        while(!heap.isEmpty()) {
+            popped.add(heap.pop().get());
+        }
+
+        List<Integer> sorted = new ArrayList<>(popped);
+        Collections.sort(sorted);
+        assertEquals(items, sorted.size());
+        for(int i = 0; i < items; i++) {
+            assertEquals(i, (int)sorted.get(i));
+        }
+    }
+}
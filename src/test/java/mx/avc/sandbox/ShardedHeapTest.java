@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import static java.util.Comparator.naturalOrder;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class ShardedHeapTest {
+    private static final Logger LOGGER = getLogger(ShardedHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER = naturalOrder();
+
+    private static void addFrom(Heap<Integer> heap, List<Integer> items)
+            throws Exception {
+        CompletableFuture.runAsync(() -> items.forEach(heap::add))
+                .get(10, SECONDS);
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 4);
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testPopAll() {
+        LOGGER.info("Testing pop() - all");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 4);
+        heap.addAll(TEST_ITEMS);
+
+        SORTED_ITEMS.forEach(e -> assertEquals(e, heap.pop().get()));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testMergeShards() throws Exception {
+        LOGGER.info("Testing pop() - merge producer shards");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 4);
+
+        int chunk = TEST_ITEMS.size() / 4 + 1;
+        for(int i = 0; i < TEST_ITEMS.size(); i += chunk) {
+            addFrom(heap, TEST_ITEMS.subList(i,
+                    Math.min(TEST_ITEMS.size(), i + chunk)));
+        }
+
+        assertEquals(TEST_ITEMS.size(), heap.size());
+        SORTED_ITEMS.forEach(e -> assertEquals(e, heap.pop().get()));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testLoweredTop() throws Exception {
+        LOGGER.info("Testing peek() - top lowered by another producer");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 2);
+        heap.add(5);
+        heap.add(7);
+        assertEquals(5, (int)heap.peek().get());
+
+        addFrom(heap, Collections.singletonList(1));
+
+        assertEquals(1, (int)heap.pop().get());
+        assertEquals(5, (int)heap.pop().get());
+        assertEquals(7, (int)heap.pop().get());
+    }
+
+    @Test
+    public void testPopSeveral() {
+        LOGGER.info("Testing pop(int)");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 4);
+        heap.addAll(TEST_ITEMS);
+
+        BinaryHeap<Integer> top = heap.pop(10);
+
+        SORTED_ITEMS.subList(0, 10).forEach(e ->
+                assertEquals(e, top.pop().get()));
+        SORTED_ITEMS.subList(10, SORTED_ITEMS.size()).forEach(e ->
+                assertEquals(e, heap.pop().get()));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        LOGGER.info("Testing update()");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 2);
+        heap.add(1);
+        addFrom(heap, Collections.singletonList(2));
+
+        assertEquals(1, (int)heap.update(() -> 3).get());
+        assertEquals(2, (int)heap.pop().get());
+        assertEquals(3, (int)heap.pop().get());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        LOGGER.info("Testing add() - concurrent producers");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 3);
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for(int p = 0; p < 6; p++) {
+            int base = p;
+            producers.add(CompletableFuture.runAsync(() -> {
+                for(int i = base; i < 6000; i += 6) {
+                    heap.add(i);
+                }
+            }));
+        }
+
+        int consumed = 0;
+        while(consumed < 1000) {
+            if(heap.pop().isPresent()) {
+                consumed++;
+            }
+        }
+        for(CompletableFuture<Void> producer : producers) {
+            producer.get(10, SECONDS);
+        }
+
+        assertEquals(5000, heap.size());
+        int previous = -1;
+        while(!heap.isEmpty()) {
+            int item = heap.pop().get();
+            assertTrue(previous <= item);
+            previous = item;
+        }
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        ShardedHeap<Integer> heap = new ShardedHeap<>(NATURAL_ORDER, 4);
+        heap.addAll(TEST_ITEMS);
+
+        heap.clear();
+
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.pop().isPresent());
+        heap.add(3);
+        assertEquals(3, (int)heap.pop().get());
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class StableBinaryHeapTest {
+    private static final Logger LOGGER = getLogger(StableBinaryHeapTest.class);
+
+    /**
+     * Orders by the tens only, so items with equal tens tie.
+     */
+    private static final Comparator<Integer> BY_TENS =
+            Comparator.comparingInt(i -> i / 10);
+
+    private static List<Integer> randomItems(int count) {
+        Random random = new Random(42);
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            items.add(random.nextInt(100));
+        }
+        return items;
+    }
+
+    private static void assertStablePops(List<Integer> items,
+            StableBinaryHeap<Integer> heap) {
+        List<Integer> sorted = new ArrayList<>(items);
+        // List.sort is stable
+        sorted.sort(BY_TENS);
+        sorted.forEach(e -> assertEquals(e, heap.pop().get()));
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testPopComprehensive() {
+        LOGGER.info("Testing pop() - comprehensive");
+        StableBinaryHeap<Integer> heap = new StableBinaryHeap<>(TEST_ITEMS);
+
+        SORTED_ITEMS.forEach(e -> assertEquals(e, heap.pop().get()));
+        assertFalse(heap.pop().isPresent());
+    }
+
+    @Test
+    public void testAddStable() {
+        LOGGER.info("Testing add() - stable");
+        List<Integer> items = randomItems(1000);
+        StableBinaryHeap<Integer> heap = new StableBinaryHeap<>(BY_TENS);
+
+        items.forEach(heap::add);
+
+        assertStablePops(items, heap);
+    }
+
+    @Test
+    public void testAddAllStable() {
+        LOGGER.info("Testing addAll() - stable");
+        List<Integer> items = randomItems(1000);
+
+        StableBinaryHeap<Integer> heap =
+                new StableBinaryHeap<>(BY_TENS, items.subList(0, 500));
+        heap.addAll(items.subList(500, 1000));
+
+        assertStablePops(items, heap);
+    }
+
+    @Test
+    public void testPopSeveralStable() {
+        LOGGER.info("Testing pop(int) - stable");
+        List<Integer> items = randomItems(1000);
+        StableBinaryHeap<Integer> heap =
+                new StableBinaryHeap<>(BY_TENS, items);
+        List<Integer> sorted = new ArrayList<>(items);
+        sorted.sort(BY_TENS);
+
+        int popped = 0;
+        for(int count : asList(0, 1, 37, 200, 2, 1000)) {
+            StableBinaryHeap<Integer> head = heap.pop(count);
+            int head_size = Math.min(count, sorted.size() - popped);
+            assertEquals(head_size, head.size());
+            assertStablePops(sorted.subList(popped, popped + head_size), head);
+            popped += head_size;
+            assertEquals(sorted.size() - popped, heap.size());
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testUpdateStable() {
+        LOGGER.info("Testing update() - stable");
+        StableBinaryHeap<Integer> heap =
+                new StableBinaryHeap<>(BY_TENS, asList(10, 11, 12));
+
+        assertEquals(Integer.valueOf(10), heap.update(() -> 13).get());
+        heap.add(14);
+
+        assertStablePops(asList(11, 12, 13, 14), heap);
+        assertFalse(heap.update(() -> 1).isPresent());
+    }
+
+    @Test
+    public void testClear() {
+        LOGGER.info("Testing clear()");
+        StableBinaryHeap<Integer> heap = new StableBinaryHeap<>(TEST_ITEMS);
+
+        heap.clear();
+
+        assertTrue(heap.isEmpty());
+        heap.add(1);
+        assertEquals(Integer.valueOf(1), heap.peek().get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPopInvalid() {
+        LOGGER.info("Testing pop(int) - invalid count");
+        new StableBinaryHeap<Integer>().pop(-1);
+    }
+}
@@ -8,6 +8,7 @@
  */
 package mx.avc.sandbox;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 
 /**
@@ -32,4 +33,25 @@ public class TestUtils {
             throw new AssertionError(e);
         }
     }
+
+    /**
+     * Indicates if the JVM can measure the bytes allocated by a thread.
+     * @return true if {@link #allocatedBytes()} is supported
+     */
+    public static boolean isAllocationAccountingSupported() {
+        return ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)ManagementFactory
+                        .getThreadMXBean()).isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * Retrieves the amount of bytes allocated so far by the current thread.
+     * @return the allocated bytes
+     */
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory
+                .getThreadMXBean()).getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import static mx.avc.sandbox.HeapTest.SORTED_ITEMS;
+import static mx.avc.sandbox.HeapTest.TEST_ITEMS;
+import static mx.avc.sandbox.TestUtils.getFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class WeakHeapTest {
+    private static final Logger LOGGER = getLogger(WeakHeapTest.class);
+
+    private static final Comparator<Integer> NATURAL_ORDER =
+            Comparator.naturalOrder();
+
+    private static void assertHeapConsistency(WeakHeap<Integer> heap) {
+        Object[] h = getFieldValue(heap, "heap");
+        long[] reverse = getFieldValue(heap, "reverse");
+        int size = getFieldValue(heap, "size");
+
+        for(int i = 1; i < size; i++) {
+            int ancestor = i;
+            while((ancestor & 1) == (reverse[ancestor >> 7]
+                    >>> (ancestor >> 1) & 1)) {
+                ancestor >>= 1;
+            }
+            ancestor >>= 1;
+            assertTrue((Integer)h[ancestor] <= (Integer)h[i]);
+        }
+    }
+
+    private static List<Integer> drain(Heap<Integer> heap) {
+        List<Integer> items = new ArrayList<>();
+        while(!heap.isEmpty()) {
+            items.add(heap.pop().get());
+        }
+        return items;
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        WeakHeap<Integer> heap = new WeakHeap<>();
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(() -> 1).isPresent());
+        assertTrue(heap.pop(2).isEmpty());
+    }
+
+    @Test
+    public void testAddPopAll() {
+        LOGGER.info("Testing add()/pop() - all");
+        WeakHeap<Integer> heap = new WeakHeap<>();
+        for(Integer item : TEST_ITEMS) {
+            heap.add(item);
+            assertHeapConsistency(heap);
+        }
+
+        for(Integer expected : SORTED_ITEMS) {
+            assertEquals(expected, heap.peek().get());
+            assertEquals(expected, heap.pop().get());
+            assertHeapConsistency(heap);
+        }
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testConstructComprehensive() {
+        LOGGER.info("Testing WeakHeap(Collection) - comprehensive");
+        for(int length = 0; length <= TEST_ITEMS.size(); length++) {
+            WeakHeap<Integer> heap = new WeakHeap<>(
+                    TEST_ITEMS.subList(0, length));
+            assertHeapConsistency(heap);
+
+            List<Integer> expected = new ArrayList<>(
+                    TEST_ITEMS.subList(0, length));
+            expected.sort(NATURAL_ORDER);
+            assertEquals(expected, drain(heap));
+        }
+    }
+
+    @Test
+    public void testPopSeveral() {
+        LOGGER.info("Testing pop(int)");
+        WeakHeap<Integer> heap = new WeakHeap<>(TEST_ITEMS);
+
+        WeakHeap<Integer> head = heap.pop(20);
+        assertHeapConsistency(heap);
+        assertHeapConsistency(head);
+        assertEquals(20, head.size());
+
+        head.add(0);
+        assertHeapConsistency(head);
+        List<Integer> items = drain(head);
+        items.addAll(drain(heap));
+        assertEquals(0, (int)items.remove(0));
+        assertEquals(SORTED_ITEMS, items);
+    }
+
+    @Test
+    public void testUpdateAddAll() {
+        LOGGER.info("Testing update()/addAll()");
+        WeakHeap<Integer> heap = new WeakHeap<>();
+        heap.addAll(TEST_ITEMS.subList(0, 5));
+        heap.addAll(TEST_ITEMS.subList(5, TEST_ITEMS.size()));
+        assertHeapConsistency(heap);
+
+        assertEquals(SORTED_ITEMS.get(0), heap.update(() -> 1000).get());
+        assertHeapConsistency(heap);
+        assertEquals(SORTED_ITEMS.get(1), heap.peek().get());
+
+        heap.addAll(SORTED_ITEMS.subList(0, 3));
+        assertHeapConsistency(heap);
+        assertEquals(TEST_ITEMS.size() + 3, heap.size());
+
+        heap.clear();
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testComparisonCount() {
+        LOGGER.info("Testing WeakHeap - comparison count");
+        AtomicInteger comparisons = new AtomicInteger();
+        Comparator<Integer> counting_order = (a, b) -> {
+            comparisons.incrementAndGet();
+            return a.compareTo(b);
+        };
+
+        List<Integer> items = new ArrayList<>();
+        for(int i = 0; i < 4096; i++) {
+            items.add(i);
+        }
+        Collections.shuffle(items, new Random(42));
+
+        WeakHeap<Integer> weak = new WeakHeap<>(counting_order, items);
+        assertEquals(items.size() - 1, comparisons.get());
+        drain(weak);
+        int weak_comparisons = comparisons.getAndSet(0);
+
+        drain(new BinaryHeap<>(counting_order, items));
+        int binary_comparisons = comparisons.get();
+
+        LOGGER.info("comparisons: weak {}, binary {}", weak_comparisons,
+                binary_comparisons);
+        assertTrue(weak_comparisons < binary_comparisons);
+    }
+}
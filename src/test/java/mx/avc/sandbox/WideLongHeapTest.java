@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Alejandro Vazquez
+
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ */
+package mx.avc.sandbox;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+import static mx.avc.sandbox.TestUtils.getFieldValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import org.slf4j.Logger;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ *
+ * @author alexv
+ */
+public class WideLongHeapTest {
+    private static final Logger LOGGER = getLogger(WideLongHeapTest.class);
+
+    private static final int[] ARITIES = new int[] { 2, 4, 8, 16 };
+
+    private static final long[] TEST_VALUES = HeapTest.TEST_ITEMS.stream()
+            .mapToLong(i -> i * 1_000_000_007L - 31_000_000_000L).toArray();
+
+    private static final long[] SORTED_TEST_VALUES;
+
+    static {
+        SORTED_TEST_VALUES = TEST_VALUES.clone();
+        Arrays.sort(SORTED_TEST_VALUES);
+    }
+
+    private static void assertHeapConsistency(WideLongHeap heap) {
+        long[] h = getFieldValue(heap, "heap");
+        int size = getFieldValue(heap, "size");
+        int shift = getFieldValue(heap, "shift");
+
+        for(int i = 1; i < size; i++) {
+            assertTrue(h[(i - 1) >> shift] <= h[i]);
+        }
+    }
+
+    @Test
+    public void testPopEmpty() {
+        LOGGER.info("Testing pop() - empty");
+        WideLongHeap heap = new WideLongHeap();
+
+        assertFalse(heap.pop().isPresent());
+        assertFalse(heap.peek().isPresent());
+        assertFalse(heap.update(1).isPresent());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    public void testAddPopAll() {
+        LOGGER.info("Testing add()/pop() - all");
+        for(int arity : ARITIES) {
+            WideLongHeap heap = new WideLongHeap(arity);
+            for(long value : TEST_VALUES) {
+                heap.add(value);
+                assertHeapConsistency(heap);
+            }
+
+            for(long expected : SORTED_TEST_VALUES) {
+                assertEquals(expected, heap.peek().getAsLong());
+                assertEquals(expected, heap.pop().getAsLong());
+                assertHeapConsistency(heap);
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConstructComprehensive() {
+        LOGGER.info("Testing WideLongHeap(int, long...) - comprehensive");
+        for(int arity : ARITIES) {
+            for(int length = 0; length <= TEST_VALUES.length; length++) {
+                long[] values = Arrays.copyOf(TEST_VALUES, length);
+                WideLongHeap heap = new WideLongHeap(arity, values);
+                assertHeapConsistency(heap);
+
+                Arrays.sort(values);
+                for(long expected : values) {
+                    assertEquals(expected, heap.pop().getAsLong());
+                }
+                assertTrue(heap.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testPopSeveral() {
+        LOGGER.info("Testing pop(int)");
+        WideLongHeap heap = new WideLongHeap(4, TEST_VALUES);
+
+        WideLongHeap top = heap.pop(20);
+        assertHeapConsistency(heap);
+        assertHeapConsistency(top);
+        assertEquals(4, top.arity());
+        assertEquals(20, top.size());
+
+        for(int i = 0; i < SORTED_TEST_VALUES.length; i++) {
+            WideLongHeap source = i < 20 ? top : heap;
+            assertEquals(SORTED_TEST_VALUES[i], source.pop().getAsLong());
+        }
+        assertTrue(heap.pop(5).isEmpty());
+    }
+
+    @Test
+    public void testUpdate() {
+        LOGGER.info("Testing update()");
+        WideLongHeap heap = new WideLongHeap(8, TEST_VALUES);
+
+        OptionalLong previous = heap.update(Long.MAX_VALUE);
+        assertHeapConsistency(heap);
+        assertEquals(SORTED_TEST_VALUES[0], previous.getAsLong());
+        assertEquals(SORTED_TEST_VALUES[1], heap.peek().getAsLong());
+
+        heap.update(Long.MIN_VALUE);
+        assertHeapConsistency(heap);
+        assertEquals(Long.MIN_VALUE, heap.pop().getAsLong());
+    }
+
+    @Test
+    public void testAddAllClear() {
+        LOGGER.info("Testing addAll()/clear()");
+        WideLongHeap heap = new WideLongHeap(16);
+
+        heap.addAll(TEST_VALUES);
+        heap.addAll(TEST_VALUES);
+        assertHeapConsistency(heap);
+        assertEquals(2 * TEST_VALUES.length, heap.size());
+
+        heap.trimToSize();
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        heap.add(3);
+        assertEquals(3, heap.pop().getAsLong());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidArity() {
+        LOGGER.info("Testing WideLongHeap(int) - invalid arity");
+        new WideLongHeap(6);
+    }
+}